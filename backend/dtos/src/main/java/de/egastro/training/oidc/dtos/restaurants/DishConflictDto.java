@@ -0,0 +1,14 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @param index   position of the dish in the submitted menu. null for a dish of the current menu which can't be removed
+ * @param name    name of the dish, if any
+ * @param message reason why the menu can't be replaced
+ */
+@XmlRootElement
+public record DishConflictDto(Integer index, String name, @NotNull String message) {
+
+}
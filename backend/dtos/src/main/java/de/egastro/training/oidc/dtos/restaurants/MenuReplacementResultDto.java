@@ -0,0 +1,15 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @param dishes    the restaurant menu after the request: the submitted one, or the unchanged current one if there are conflicts
+ * @param conflicts all the reasons why the menu could not be replaced. Empty if it was.
+ */
+@XmlRootElement
+public record MenuReplacementResultDto(@NotNull List<DishResponseDto> dishes, @NotNull List<DishConflictDto> conflicts) {
+
+}
@@ -0,0 +1,15 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @param index   position of the order in the submitted batch
+ * @param status  HTTP status the order would have had if submitted alone
+ * @param orderId ID of the created order. null if it was rejected
+ * @param message reason for the rejection. null if the order was created
+ */
+@XmlRootElement
+public record OrderCreationResultDto(@NotNull Integer index, @NotNull Integer status, Long orderId, String message) {
+
+}
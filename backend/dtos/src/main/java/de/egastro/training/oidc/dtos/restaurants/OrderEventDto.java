@@ -0,0 +1,17 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @param type    what happened to the order
+ * @param orderId ID of the order concerned by the event
+ * @param order   state of the order after the event. null when it was deleted
+ */
+@XmlRootElement
+public record OrderEventDto(@NotNull OrderEventType type, @NotNull Long orderId, OrderResponseDto order) {
+
+	public static enum OrderEventType {
+		CREATED, UPDATED, DELETED;
+	}
+}
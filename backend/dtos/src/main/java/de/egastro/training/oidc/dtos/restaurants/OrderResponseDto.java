@@ -15,6 +15,7 @@ public record OrderResponseDto(
 		@NotNull Long askedFor,
 		Long engagedFor,
 		Long readyAt,
-		Long pickedAt) {
+		Long pickedAt,
+		@NotNull Long version) {
 
 }
@@ -0,0 +1,18 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @param from                   epoch second of the beginning of the period
+ * @param preparedCount          number of orders with both engagedFor and readyAt
+ * @param averagePrepTimeSeconds average of readyAt - engagedFor over the prepared orders, null if there is none
+ */
+@XmlRootElement
+public record OrderStatisticsDto(
+		@NotNull Long from,
+		@NotNull Long orderCount,
+		@NotNull Long revenueInCents,
+		@NotNull Long preparedCount,
+		Double averagePrepTimeSeconds) {
+}
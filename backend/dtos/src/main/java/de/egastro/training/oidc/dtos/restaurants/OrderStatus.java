@@ -0,0 +1,8 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+/**
+ * Order lifecycle: PENDING &rarr; ENGAGED &rarr; READY &rarr; PICKED. It is derived from which of engagedFor, readyAt and pickedAt are set.
+ */
+public enum OrderStatus {
+	PENDING, ENGAGED, READY, PICKED;
+}
@@ -0,0 +1,15 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Moves an order one step forward in its lifecycle: ENGAGED &rarr; READY &rarr; PICKED
+ *
+ * @param status     the status to transition to (PENDING is not a valid target)
+ * @param version    version of the order this transition was decided from (see {@link OrderResponseDto#version()})
+ * @param engagedFor epoch second the kitchen engages to have the order ready for. Required to transition to ENGAGED, ignored otherwise.
+ */
+@XmlRootElement
+public record OrderStatusUpdateDto(@NotNull OrderStatus status, @NotNull Long version, Long engagedFor) {
+}
@@ -0,0 +1,15 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/**
+ * @param orders     a page of orders, most recent first
+ * @param nextCursor opaque value to send as "cursor" request param to get the next page. null when there is no more orders.
+ */
+@XmlRootElement
+public record OrdersPageDto(@NotNull List<OrderResponseDto> orders, String nextCursor) {
+
+}
@@ -0,0 +1,27 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Progress of the deletion of a restaurant and of all its data
+ *
+ * @param startedAt epoch second of the deletion request
+ * @param endedAt   epoch second of the end of the purge, null while it is in progress
+ * @param error     why the last attempt failed (it is retried when the service restarts), null if it did not
+ */
+public record RestaurantPurgeDto(
+		@NotNull Long id,
+		@NotNull Long restaurantId,
+		@NotNull String authorizedParty,
+		@NotNull String restaurantName,
+		@NotNull RestaurantPurgeStatus status,
+		@NotNull Long deletedGrants,
+		@NotNull Long deletedOrders,
+		@NotNull Long deletedOrderLines,
+		@NotNull Long deletedArchivedOrders,
+		@NotNull Long deletedArchivedOrderLines,
+		@NotNull Long deletedDishes,
+		@NotNull Long startedAt,
+		Long endedAt,
+		String error) {
+}
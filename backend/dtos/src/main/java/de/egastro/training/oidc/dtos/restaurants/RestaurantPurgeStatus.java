@@ -0,0 +1,5 @@
+package de.egastro.training.oidc.dtos.restaurants;
+
+public enum RestaurantPurgeStatus {
+	PENDING, RUNNING, DONE, FAILED;
+}
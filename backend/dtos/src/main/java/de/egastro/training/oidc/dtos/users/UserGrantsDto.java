@@ -6,7 +6,11 @@ import java.util.Map;
 import jakarta.validation.constraints.NotNull;
 import jakarta.xml.bind.annotation.XmlRootElement;
 
+/**
+ * @param grantsByRestaurantId     grant names per restaurant ID
+ * @param grantMasksByRestaurantId the same grants, as bit masks of the grant ordinals (1 &lt;&lt; ordinal), for compact tokens
+ */
 @XmlRootElement
-public record UserGrantsDto(@NotNull Map<Long, List<String>> grantsByRestaurantId) {
+public record UserGrantsDto(@NotNull Map<Long, List<String>> grantsByRestaurantId, @NotNull Map<Long, Integer> grantMasksByRestaurantId) {
 
 }
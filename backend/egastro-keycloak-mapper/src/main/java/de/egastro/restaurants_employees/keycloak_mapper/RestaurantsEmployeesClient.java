@@ -1,36 +1,86 @@
 package de.egastro.restaurants_employees.keycloak_mapper;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.web.client.RestClient;
 
 import de.egastro.training.oidc.dtos.users.UserGrantsDto;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Client of the restaurants-employees API, authorized with a client-credentials token. One instance per configuration is shared by all the Keycloak
+ * threads minting tokens. User grants are {@link UserGrantsCache cached}.
+ * <p>
+ * The client token is refreshed by a single request at a time, started in the background once {@link #REFRESH_RATIO 80%} of its lifetime is elapsed: until
+ * it expires, the current token keeps being served while the refresh is in flight. Only once a token is expired (or was never fetched) do callers wait for
+ * the refresh. After a failed refresh, the next background one is delayed by {@link #REFRESH_RETRY_DELAY}, not to have each call retry while the
+ * authorization server is down.
+ * <p>
+ * Token refreshes run on their own thread: background grants refreshes wait for the token when it is expired, and would otherwise starve the refresh they
+ * wait for.
+ */
 @Slf4j
 public class RestaurantsEmployeesClient {
+	static final double REFRESH_RATIO = .8;
+	static final Duration REFRESH_RETRY_DELAY = Duration.ofSeconds(5);
+	private static final long TOKEN_TIMEOUT_SECONDS = 10L;
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+	private static final Duration READ_TIMEOUT = Duration.ofSeconds(5);
 
-	private static final Map<RestaurantsEmployeesClientConfig, RestaurantsEmployeesClient> instances = new HashMap<>();
+	private static final Map<RestaurantsEmployeesClientConfig, RestaurantsEmployeesClient> instances = new ConcurrentHashMap<>();
+
+	/**
+	 * Background grants refreshes, on a few daemon threads (not to prevent Keycloak shutdown)
+	 */
+	static final ExecutorService executor = newExecutor(4, "restaurants-employees-client");
+
+	/**
+	 * Client token refreshes, on a single daemon thread, not shared with the grants refreshes which wait for it
+	 */
+	static final ExecutorService tokenExecutor = newExecutor(1, "restaurants-employees-client-token");
 
 	private final RestaurantsEmployeesClientConfig config;
 	private final RestClient tokenClient;
 	private final RestClient usersClient;
-	private long expiresAt = 0L;
-	private Optional<TokenResponseDto> token = Optional.empty();
+	private final UserGrantsCache grantsCache;
+	private volatile ClientToken token = null;
+	/**
+	 * Epoch milli before which no background refresh is started, set when a refresh fails
+	 */
+	private volatile long retryRefreshAt = 0L;
+	private final AtomicReference<CompletableFuture<ClientToken>> refreshing = new AtomicReference<>();
 
 	private RestaurantsEmployeesClient(RestaurantsEmployeesClientConfig config) {
 		this.config = config;
 		this.tokenClient = RestClient.builder().baseUrl(config.tokenEndpointUri()).build();
-		this.usersClient = RestClient.builder().build();
+		final var requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(CONNECT_TIMEOUT);
+		requestFactory.setReadTimeout(READ_TIMEOUT);
+		this.usersClient = RestClient.builder().requestFactory(requestFactory).build();
+		this.grantsCache = new UserGrantsCache(config.grantsTtl(), config.grantsMaxStaleness(), this::fetchUserGrants, executor);
 	}
 
 	public Optional<UserGrantsDto> getUserGrants(String realm, String userId) {
+		return grantsCache.get(realm, userId);
+	}
+
+	private Optional<UserGrantsDto> fetchUserGrants(String realm, String userId) {
 		try {
 			return Optional
 					.ofNullable(
@@ -54,27 +104,95 @@ public class RestaurantsEmployeesClient {
 	}
 
 	private Optional<String> getClientAccessToken() {
-		final var now = Instant.now().getEpochSecond();
-		if (expiresAt < now) {
-			final var formData = new LinkedMultiValueMap<>();
-			formData.add("scope", "openid profile");
-			formData.add("grant_type", "client_credentials");
-			try {
-				token = Optional.ofNullable(tokenClient.post().headers(headers -> {
-					headers.setBasicAuth(config.clientId(), config.clientSecret());
-				}).contentType(MediaType.APPLICATION_FORM_URLENCODED).body(formData).retrieve().body(TokenResponseDto.class));
-				expiresAt = now + token.map(TokenResponseDto::getExpiresIn).orElse(0L);
-			} catch (final Exception e) {
-				log.error("Failed to get client authorization-token:", e);
-				token = Optional.empty();
+		final var now = Instant.now().toEpochMilli();
+		final var current = token;
+		if (current != null && now < current.expiresAt) {
+			if (now >= current.refreshAt && now >= retryRefreshAt) {
+				refresh();
 			}
+			return Optional.of(current.accessToken);
+		}
+		try {
+			return Optional.of(refresh().get(TOKEN_TIMEOUT_SECONDS, TimeUnit.SECONDS).accessToken);
+		} catch (final ExecutionException e) {
+			// already logged by the refresh
+			return Optional.empty();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Optional.empty();
+		} catch (final TimeoutException e) {
+			log.error("Timeout getting client authorization-token");
+			return Optional.empty();
 		}
-		return token.map(TokenResponseDto::getAccessToken);
+	}
+
+	/**
+	 * @return the refresh in flight, or a new one if there is none
+	 */
+	private CompletableFuture<ClientToken> refresh() {
+		while (true) {
+			final var inFlight = refreshing.get();
+			if (inFlight != null) {
+				return inFlight;
+			}
+			final var started = new CompletableFuture<ClientToken>();
+			if (refreshing.compareAndSet(null, started)) {
+				try {
+					tokenExecutor.execute(() -> {
+						try {
+							final var fetched = fetchToken();
+							token = fetched;
+							started.complete(fetched);
+						} catch (final Exception e) {
+							log.error("Failed to get client authorization-token:", e);
+							retryRefreshAt = Instant.now().plus(REFRESH_RETRY_DELAY).toEpochMilli();
+							started.completeExceptionally(e);
+						} finally {
+							refreshing.compareAndSet(started, null);
+						}
+					});
+				} catch (final RuntimeException e) {
+					refreshing.compareAndSet(started, null);
+					started.completeExceptionally(e);
+				}
+				return started;
+			}
+		}
+	}
+
+	private ClientToken fetchToken() {
+		final var now = Instant.now().toEpochMilli();
+		final var formData = new LinkedMultiValueMap<>();
+		formData.add("scope", "openid profile");
+		formData.add("grant_type", "client_credentials");
+		final var response = tokenClient.post().headers(headers -> {
+			headers.setBasicAuth(config.clientId(), config.clientSecret());
+		}).contentType(MediaType.APPLICATION_FORM_URLENCODED).body(formData).retrieve().body(TokenResponseDto.class);
+		if (response == null || response.getAccessToken() == null) {
+			throw new IllegalStateException("No access token in client-credentials response");
+		}
+		final var expiresInMillis = Optional.ofNullable(response.getExpiresIn()).orElse(0L) * 1000L;
+		return new ClientToken(response.getAccessToken(), now + expiresInMillis, now + (long) (expiresInMillis * REFRESH_RATIO));
 	}
 
 	public static RestaurantsEmployeesClient getInstance(RestaurantsEmployeesClientConfig config) {
-		return instances.computeIfAbsent(config, c -> {
-			return new RestaurantsEmployeesClient(c);
+		return instances.computeIfAbsent(config, RestaurantsEmployeesClient::new);
+	}
+
+	private static ExecutorService newExecutor(int threads, String threadName) {
+		final var executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(1000), runnable -> {
+			final var thread = new Thread(runnable, threadName);
+			thread.setDaemon(true);
+			return thread;
 		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * @param expiresAt epoch milli
+	 * @param refreshAt epoch milli after which a new token is fetched in the background
+	 */
+	private static record ClientToken(String accessToken, long expiresAt, long refreshAt) {
 	}
 }
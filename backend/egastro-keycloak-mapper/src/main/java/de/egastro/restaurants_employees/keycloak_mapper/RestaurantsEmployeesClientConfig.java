@@ -1,4 +1,16 @@
 package de.egastro.restaurants_employees.keycloak_mapper;
 
-public record RestaurantsEmployeesClientConfig(String tokenEndpointUri, String clientId, String clientSecret, String usersApiBaseUri) {
-}
\ No newline at end of file
+import java.time.Duration;
+
+/**
+ * @param grantsTtl          how long user grants are served from the cache before being refreshed
+ * @param grantsMaxStaleness how long cached user grants are still served when they can't be refreshed
+ */
+public record RestaurantsEmployeesClientConfig(
+		String tokenEndpointUri,
+		String clientId,
+		String clientSecret,
+		String usersApiBaseUri,
+		Duration grantsTtl,
+		Duration grantsMaxStaleness) {
+}
@@ -1,5 +1,6 @@
 package de.egastro.restaurants_employees.keycloak_mapper;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -25,6 +26,11 @@ public class RestaurantsEmployeesKeycloakMapper extends AbstractOIDCProtocolMapp
 	private static final String RESTAURANTS_EMPLOYEES_CLIENT_SECRET = "restaurants-employees-client.client-secret";
 	private static final String PROVIDER_ID = "egastro.de";
 	private static final String RESTAURANTS_EMPLOYEES_API_BASE_URI = "restaurants-employees-api.base-uri";
+	private static final String COMPACT_GRANTS_CLAIM = "restaurants-employees-mapper.compact-grants-claim";
+	private static final String GRANTS_CACHE_TTL = "restaurants-employees-mapper.grants-cache-ttl";
+	private static final String GRANTS_MAX_STALENESS = "restaurants-employees-mapper.grants-max-staleness";
+	private static final long DEFAULT_GRANTS_CACHE_TTL_SECONDS = 30L;
+	private static final long DEFAULT_GRANTS_MAX_STALENESS_SECONDS = 600L;
 
 	private final List<ProviderConfigProperty> configProperties = new ArrayList<>();
 
@@ -61,6 +67,32 @@ public class RestaurantsEmployeesKeycloakMapper extends AbstractOIDCProtocolMapp
 		property.setType(ProviderConfigProperty.STRING_TYPE);
 		property.setDefaultValue("https://localhost:7080/auth/realms/master/protocol/openid-connect/token");
 		configProperties.add(property);
+
+		property = new ProviderConfigProperty();
+		property.setName(COMPACT_GRANTS_CLAIM);
+		property.setLabel("Compact grants claim");
+		property.setHelpText(
+				"Adds \"grantMasksByRestaurantId\" (bit masks of the grants ordinals) instead of \"grantsByRestaurantId\" (grant names). Requires a management-console API decoding it.");
+		property.setType(ProviderConfigProperty.BOOLEAN_TYPE);
+		property.setDefaultValue("false");
+		configProperties.add(property);
+
+		property = new ProviderConfigProperty();
+		property.setName(GRANTS_CACHE_TTL);
+		property.setLabel("Grants cache TTL (seconds)");
+		property.setHelpText("How long the grants of a user are served from a local cache before being refreshed in the background");
+		property.setType(ProviderConfigProperty.STRING_TYPE);
+		property.setDefaultValue(String.valueOf(DEFAULT_GRANTS_CACHE_TTL_SECONDS));
+		configProperties.add(property);
+
+		property = new ProviderConfigProperty();
+		property.setName(GRANTS_MAX_STALENESS);
+		property.setLabel("Grants max staleness (seconds)");
+		property.setHelpText(
+				"How long cached grants are still added to tokens when they can't be refreshed (API slow or down). Passed this delay, grants are fetched before issuing the token.");
+		property.setType(ProviderConfigProperty.STRING_TYPE);
+		property.setDefaultValue(String.valueOf(DEFAULT_GRANTS_MAX_STALENESS_SECONDS));
+		configProperties.add(property);
 	}
 
 	@Override
@@ -110,7 +142,7 @@ public class RestaurantsEmployeesKeycloakMapper extends AbstractOIDCProtocolMapp
 
 	@Override
 	public String getHelpText() {
-		return "Adds \"grantsByRestaurantId\" private claim containing lists of grants for the current user on different restaurants";
+		return "Adds \"grantsByRestaurantId\" private claim containing lists of grants for the current user on different restaurants (or \"grantMasksByRestaurantId\", with grants as bit masks, if the compact format is enabled)";
 	}
 
 	@Override
@@ -128,16 +160,33 @@ public class RestaurantsEmployeesKeycloakMapper extends AbstractOIDCProtocolMapp
 				mappingModel.getConfig().get(TOKEN_ENDPOINT_URI),
 				mappingModel.getConfig().get(RESTAURANTS_EMPLOYEES_CLIENT_ID),
 				mappingModel.getConfig().get(RESTAURANTS_EMPLOYEES_CLIENT_SECRET),
-				mappingModel.getConfig().get(RESTAURANTS_EMPLOYEES_API_BASE_URI));
+				mappingModel.getConfig().get(RESTAURANTS_EMPLOYEES_API_BASE_URI),
+				seconds(mappingModel.getConfig().get(GRANTS_CACHE_TTL), DEFAULT_GRANTS_CACHE_TTL_SECONDS),
+				seconds(mappingModel.getConfig().get(GRANTS_MAX_STALENESS), DEFAULT_GRANTS_MAX_STALENESS_SECONDS));
 		final var realm = Optional.ofNullable(userSession.getRealm()).map(RealmModel::getName).orElse("");
 		final var userId = Optional.ofNullable(userSession.getUser()).map(UserModel::getId).orElse("");
 		if (StringUtils.hasText(realm) && StringUtils.hasText(userId)) {
 			RestaurantsEmployeesClient.getInstance(clientConfig).getUserGrants(realm, userId).ifPresent(userGrants -> {
-				token.getOtherClaims().put("grantsByRestaurantId", userGrants.grantsByRestaurantId());
+				if (Boolean.parseBoolean(mappingModel.getConfig().get(COMPACT_GRANTS_CLAIM)) && userGrants.grantMasksByRestaurantId() != null) {
+					token.getOtherClaims().put("grantMasksByRestaurantId", userGrants.grantMasksByRestaurantId());
+				} else {
+					token.getOtherClaims().put("grantsByRestaurantId", userGrants.grantsByRestaurantId());
+				}
 				setClaim(token, mappingModel, userSession, keycloakSession, clientSessionCtx);
 			});
 		}
 		return token;
 
 	}
-}
\ No newline at end of file
+
+	private static Duration seconds(String value, long defaultSeconds) {
+		if (!StringUtils.hasText(value)) {
+			return Duration.ofSeconds(defaultSeconds);
+		}
+		try {
+			return Duration.ofSeconds(Math.max(0L, Long.parseLong(value.strip())));
+		} catch (final NumberFormatException e) {
+			return Duration.ofSeconds(defaultSeconds);
+		}
+	}
+}
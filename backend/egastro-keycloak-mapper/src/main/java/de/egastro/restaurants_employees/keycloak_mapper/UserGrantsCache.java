@@ -0,0 +1,162 @@
+package de.egastro.restaurants_employees.keycloak_mapper;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+
+import de.egastro.training.oidc.dtos.users.UserGrantsDto;
+
+/**
+ * User grants per (realm, user ID), so that minting a token does not wait for the restaurants-employees API:
+ * <ul>
+ * <li>during the TTL following a load, grants are served from the cache</li>
+ * <li>then, until the max staleness is reached, the cached grants are still served, while a single background request per user refreshes them. If the API
+ * is slow or down, tokens are minted with grants which are at most max staleness old</li>
+ * <li>passed the max staleness (or for unknown users), the grants are loaded synchronously</li>
+ * </ul>
+ * A single request per user is sent at a time: concurrent token issuances for a user who is not cached wait for the same load (or for the background
+ * refresh in flight). Users without grants are cached like others. Failed synchronous loads are cached too, for {@link #FAILURE_TTL}, not to have each
+ * token issuance wait for an API which is down. At most {@link #MAX_SIZE} users are kept, the least recently used being evicted first.
+ */
+class UserGrantsCache {
+	static final int MAX_SIZE = 10000;
+	static final Duration FAILURE_TTL = Duration.ofSeconds(5);
+	static final Duration WAIT_TIMEOUT = Duration.ofSeconds(10);
+
+	private final Duration ttl;
+	private final Duration maxStaleness;
+	private final BiFunction<String, String, Optional<UserGrantsDto>> loader;
+	private final Executor executor;
+
+	/**
+	 * Loads in flight (synchronous or background), per user
+	 */
+	private final Map<Key, CompletableFuture<Optional<UserGrantsDto>>> loading = new ConcurrentHashMap<>();
+
+	/**
+	 * In access order: the least recently used entries are the first to be evicted
+	 */
+	private final LinkedHashMap<Key, CachedGrants> entries = new LinkedHashMap<>(16, .75f, true) {
+		private static final long serialVersionUID = -1718407906211566466L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, CachedGrants> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	/**
+	 * @param loader   fetches the grants of a user (by realm and user ID), empty if the request failed
+	 * @param executor for background refreshes
+	 */
+	UserGrantsCache(Duration ttl, Duration maxStaleness, BiFunction<String, String, Optional<UserGrantsDto>> loader, Executor executor) {
+		this.ttl = ttl;
+		this.maxStaleness = maxStaleness.compareTo(ttl) < 0 ? ttl : maxStaleness;
+		this.loader = loader;
+		this.executor = executor;
+	}
+
+	Optional<UserGrantsDto> get(String realm, String userId) {
+		final var key = new Key(realm, userId);
+		final var now = Instant.now();
+		final CachedGrants entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null && now.isBefore(entry.freshUntil)) {
+			return entry.grants;
+		}
+		if (entry != null && now.isBefore(entry.staleUntil)) {
+			refreshInBackground(key);
+			return entry.grants;
+		}
+		final var started = new CompletableFuture<Optional<UserGrantsDto>>();
+		final var inFlight = loading.putIfAbsent(key, started);
+		if (inFlight != null) {
+			return await(inFlight);
+		}
+		try {
+			// another load may have completed since the entry was read
+			synchronized (entries) {
+				final var loadedMeanwhile = entries.get(key);
+				if (loadedMeanwhile != null && loadedMeanwhile != entry && Instant.now().isBefore(loadedMeanwhile.staleUntil)) {
+					started.complete(loadedMeanwhile.grants);
+					return loadedMeanwhile.grants;
+				}
+			}
+			final var loaded = loader.apply(realm, userId);
+			final var loadedAt = Instant.now();
+			synchronized (entries) {
+				if (loaded.isPresent()) {
+					entries.put(key, new CachedGrants(loaded, loadedAt.plus(ttl), loadedAt.plus(maxStaleness)));
+				} else {
+					entries.put(key, new CachedGrants(loaded, loadedAt.plus(FAILURE_TTL), loadedAt.plus(FAILURE_TTL)));
+				}
+			}
+			started.complete(loaded);
+			return loaded;
+		} finally {
+			// waiters get no grants if the loader failed unexpectedly
+			started.complete(Optional.empty());
+			loading.remove(key, started);
+		}
+	}
+
+	private void refreshInBackground(Key key) {
+		final var started = new CompletableFuture<Optional<UserGrantsDto>>();
+		if (loading.putIfAbsent(key, started) != null) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					final var loaded = loader.apply(key.realm, key.userId);
+					if (loaded.isPresent()) {
+						final var loadedAt = Instant.now();
+						synchronized (entries) {
+							entries.put(key, new CachedGrants(loaded, loadedAt.plus(ttl), loadedAt.plus(maxStaleness)));
+						}
+					}
+					// on failure, the stale entry is kept until it reaches max staleness
+					started.complete(loaded);
+				} finally {
+					started.complete(Optional.empty());
+					loading.remove(key, started);
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			started.complete(Optional.empty());
+			loading.remove(key, started);
+		}
+	}
+
+	/**
+	 * @return the grants loaded by another thread, empty if that takes longer than {@link #WAIT_TIMEOUT}
+	 */
+	private static Optional<UserGrantsDto> await(CompletableFuture<Optional<UserGrantsDto>> inFlight) {
+		try {
+			return inFlight.get(WAIT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Optional.empty();
+		} catch (final ExecutionException | TimeoutException e) {
+			return Optional.empty();
+		}
+	}
+
+	private static record Key(String realm, String userId) {
+	}
+
+	private static record CachedGrants(Optional<UserGrantsDto> grants, Instant freshUntil, Instant staleUntil) {
+	}
+}
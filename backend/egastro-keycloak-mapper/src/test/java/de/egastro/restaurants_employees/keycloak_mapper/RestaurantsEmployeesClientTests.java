@@ -0,0 +1,177 @@
+package de.egastro.restaurants_employees.keycloak_mapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class RestaurantsEmployeesClientTests {
+	final AtomicInteger tokenRequests = new AtomicInteger();
+	final Set<String> authorizations = ConcurrentHashMap.newKeySet();
+	final AtomicInteger grantsRequests = new AtomicInteger();
+	final AtomicInteger unauthorizedGrantsRequests = new AtomicInteger();
+	volatile int tokenStatus = 200;
+	volatile long tokenDelayMillis = 0L;
+	volatile long tokenExpiresInSeconds = 300L;
+	HttpServer server;
+	RestaurantsEmployeesClient client;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/token", this::handleToken);
+		server.createContext("/users", this::handleGrants);
+		server.start();
+		final var baseUri = "http://localhost:%d".formatted(server.getAddress().getPort());
+		client = newClient(baseUri, Duration.ofMinutes(5));
+	}
+
+	static RestaurantsEmployeesClient newClient(String baseUri, Duration grantsTtl) {
+		return RestaurantsEmployeesClient
+				.getInstance(
+						new RestaurantsEmployeesClientConfig(
+								baseUri + "/token",
+								"restaurants-employees-mapper",
+								"secret",
+								baseUri + "/users",
+								grantsTtl,
+								Duration.ofMinutes(5)));
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	void givenNoToken_whenConcurrentCallsNeedOne_thenASingleTokenRequestIsSentAndShared() throws Exception {
+		tokenDelayMillis = 300L;
+		final var threads = Executors.newFixedThreadPool(8);
+		final var start = new CountDownLatch(1);
+		final var calls = new ArrayList<Future<Boolean>>();
+		for (var i = 0; i < 8; ++i) {
+			final var userId = "user-%d".formatted(i);
+			calls.add(threads.submit(() -> {
+				start.await();
+				return client.getUserGrants("sushibach", userId).isPresent();
+			}));
+		}
+
+		start.countDown();
+		for (final var call : calls) {
+			assertThat(call.get()).isTrue();
+		}
+		threads.shutdown();
+
+		assertThat(tokenRequests).hasValue(1);
+		assertThat(authorizations).containsExactly("Bearer token-1");
+	}
+
+	@Test
+	void givenBackgroundRefreshFailed_whenTokenIsStillValid_thenRefreshIsNotRetriedBeforeTheDelay() throws Exception {
+		tokenExpiresInSeconds = 2L;
+		client.getUserGrants("sushibach", "first");
+		assertThat(tokenRequests).hasValue(1);
+
+		// passed the refresh time (80% of the token lifetime), the authorization server is down
+		tokenStatus = 500;
+		Thread.sleep(1700L);
+		client.getUserGrants("sushibach", "refresh-trigger");
+		Thread.sleep(200L);
+		for (var i = 0; i < 3; ++i) {
+			client.getUserGrants("sushibach", "during-retry-delay-%d".formatted(i));
+		}
+		assertThat(tokenRequests).hasValue(2);
+		assertThat(authorizations).containsExactly("Bearer token-1");
+
+		// once the token is expired, callers wait for a new one, regardless of the retry delay
+		tokenStatus = 200;
+		Thread.sleep(300L);
+		client.getUserGrants("sushibach", "after-expiry");
+		assertThat(tokenRequests).hasValue(3);
+		assertThat(authorizations).containsExactlyInAnyOrder("Bearer token-1", "Bearer token-3");
+	}
+
+	@Test
+	void givenExpiredToken_whenGrantsRefreshesSaturateThePool_thenTheTokenIsStillRefreshedAndSent() throws Exception {
+		// grants are stale right after being loaded: each later call triggers a background refresh
+		client = newClient("http://localhost:%d".formatted(server.getAddress().getPort()), Duration.ZERO);
+		tokenExpiresInSeconds = 1L;
+		tokenDelayMillis = 200L;
+		final var users = 8;
+		for (var i = 0; i < users; ++i) {
+			client.getUserGrants("sushibach", "user-%d".formatted(i));
+		}
+		assertThat(tokenRequests).hasValue(1);
+
+		// once the token is expired, all the grants refresh threads wait for a new one
+		Thread.sleep(1200L);
+		final var start = System.currentTimeMillis();
+		for (var i = 0; i < users; ++i) {
+			client.getUserGrants("sushibach", "user-%d".formatted(i));
+		}
+		while (grantsRequests.get() < 2 * users && System.currentTimeMillis() - start < 5000L) {
+			Thread.sleep(20L);
+		}
+
+		assertThat(grantsRequests).hasValue(2 * users);
+		assertThat(System.currentTimeMillis() - start).isLessThan(5000L);
+		assertThat(unauthorizedGrantsRequests).hasValue(0);
+		assertThat(tokenRequests).hasValue(2);
+		assertThat(authorizations).containsExactlyInAnyOrder("Bearer token-1", "Bearer token-2");
+	}
+
+	void handleToken(HttpExchange exchange) throws IOException {
+		final var count = tokenRequests.incrementAndGet();
+		try {
+			Thread.sleep(tokenDelayMillis);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (tokenStatus != 200) {
+			respond(exchange, tokenStatus, "{}");
+			return;
+		}
+		respond(exchange, 200, """
+				{"access_token": "token-%d", "expires_in": %d, "token_type": "Bearer"}""".formatted(count, tokenExpiresInSeconds));
+	}
+
+	void handleGrants(HttpExchange exchange) throws IOException {
+		grantsRequests.incrementAndGet();
+		final List<String> authorization = exchange.getRequestHeaders().get("Authorization");
+		if (authorization != null) {
+			authorizations.addAll(authorization);
+		} else {
+			unauthorizedGrantsRequests.incrementAndGet();
+		}
+		respond(exchange, 200, """
+				{"grantsByRestaurantId": {"42": ["VIEW_ORDERS"]}, "grantMasksByRestaurantId": {"42": 4}}""");
+	}
+
+	static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		final var body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (var out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package de.egastro.restaurants_employees.keycloak_mapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import de.egastro.training.oidc.dtos.users.UserGrantsDto;
+
+class UserGrantsCacheTests {
+	final AtomicInteger loadCount = new AtomicInteger();
+	final AtomicBoolean apiDown = new AtomicBoolean();
+	final QueuedTasks refreshes = new QueuedTasks();
+
+	@Test
+	void givenFreshEntry_whenGetting_thenGrantsAreNotReloaded() {
+		final var cache = new UserGrantsCache(Duration.ofMinutes(5), Duration.ofMinutes(10), this::load, refreshes);
+
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(1));
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(1));
+
+		assertThat(loadCount).hasValue(1);
+		assertThat(refreshes.size()).isZero();
+	}
+
+	@Test
+	void givenStaleEntry_whenGetting_thenItIsServedWhileASingleBackgroundRefreshReplacesIt() {
+		final var cache = new UserGrantsCache(Duration.ZERO, Duration.ofMinutes(10), this::load, refreshes);
+		cache.get("sushibach", "ch4mp");
+
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(1));
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(1));
+		assertThat(refreshes.size()).isEqualTo(1);
+
+		refreshes.runAll();
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(2));
+	}
+
+	@Test
+	void givenBackgroundRefreshFailed_whenGetting_thenTheStaleEntryIsStillServed() {
+		final var cache = new UserGrantsCache(Duration.ZERO, Duration.ofMinutes(10), this::load, refreshes);
+		cache.get("sushibach", "ch4mp");
+		apiDown.set(true);
+
+		cache.get("sushibach", "ch4mp");
+		refreshes.runAll();
+
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(1));
+		assertThat(refreshes.size()).isEqualTo(1);
+	}
+
+	@Test
+	void givenEntryPassedMaxStaleness_whenGetting_thenGrantsAreLoadedSynchronously() {
+		final var cache = new UserGrantsCache(Duration.ZERO, Duration.ZERO, this::load, refreshes);
+		cache.get("sushibach", "ch4mp");
+
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(2));
+		assertThat(refreshes.size()).isZero();
+	}
+
+	@Test
+	void givenSynchronousLoadFailed_whenGettingAgainWithinFailureTtl_thenTheApiIsNotCalled() {
+		final var cache = new UserGrantsCache(Duration.ofMinutes(5), Duration.ofMinutes(10), this::load, refreshes);
+		apiDown.set(true);
+
+		assertThat(cache.get("sushibach", "ch4mp")).isEmpty();
+		assertThat(cache.get("sushibach", "ch4mp")).isEmpty();
+
+		assertThat(loadCount).hasValue(1);
+	}
+
+	@Test
+	void givenRefreshRejectedByExecutor_whenGettingAgain_thenRefreshIsSubmittedAgain() {
+		final var rejections = new AtomicInteger();
+		final var cache = new UserGrantsCache(Duration.ZERO, Duration.ofMinutes(10), this::load, task -> {
+			rejections.incrementAndGet();
+			throw new RejectedExecutionException("queue full");
+		});
+		cache.get("sushibach", "ch4mp");
+
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(1));
+		assertThat(cache.get("sushibach", "ch4mp")).contains(grants(1));
+
+		assertThat(rejections).hasValue(2);
+	}
+
+	@Test
+	void givenUserNotCached_whenConcurrentCallsGetIt_thenASingleLoadIsShared() throws Exception {
+		final var release = new CountDownLatch(1);
+		final var cache = new UserGrantsCache(Duration.ofMinutes(5), Duration.ofMinutes(10), (realm, userId) -> {
+			try {
+				release.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return load(realm, userId);
+		}, refreshes);
+		final var threads = Executors.newFixedThreadPool(8);
+		final var calls = new ArrayList<Future<Optional<UserGrantsDto>>>();
+		for (var i = 0; i < 8; ++i) {
+			calls.add(threads.submit(() -> cache.get("sushibach", "ch4mp")));
+		}
+
+		// all the calls are waiting for the first load
+		Thread.sleep(200L);
+		release.countDown();
+		for (final var call : calls) {
+			assertThat(call.get()).contains(grants(1));
+		}
+		threads.shutdown();
+
+		assertThat(loadCount).hasValue(1);
+	}
+
+	Optional<UserGrantsDto> load(String realm, String userId) {
+		final var count = loadCount.incrementAndGet();
+		return apiDown.get() ? Optional.empty() : Optional.of(grants(count));
+	}
+
+	/**
+	 * @param restaurantId distinct per load, to tell which load a cached response comes from
+	 */
+	static UserGrantsDto grants(long restaurantId) {
+		return new UserGrantsDto(Map.of(restaurantId, List.of("MANAGER")), Map.of(restaurantId, 1));
+	}
+
+	/**
+	 * Background refreshes, run by the test thread when it calls {@link #runAll()}
+	 */
+	static class QueuedTasks implements Executor {
+		private final List<Runnable> tasks = new ArrayList<>();
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		int size() {
+			return tasks.size();
+		}
+
+		void runAll() {
+			new ArrayList<>(tasks).forEach(Runnable::run);
+			tasks.clear();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package de.egastro.training.oidc.security;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import com.c4_soft.springaddons.security.oidc.OpenidClaimSet;
+
+import de.egastro.training.oidc.domain.RestaurantGrant;
+
+/**
+ * Cost of a restaurant grant check: {@link RequiresRestaurantGrant} versus the equivalent {@link PreAuthorize} expression evaluated with the application
+ * expression handler. Run with:
+ *
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RestaurantGrantAuthorizationBenchmark {
+	private static final Long RESTAURANT_ID = 42L;
+
+	private final RestaurantGrantAuthorizationManager requiresRestaurantGrant = new RestaurantGrantAuthorizationManager();
+	private final PreAuthorizeAuthorizationManager preAuthorize = new PreAuthorizeAuthorizationManager();
+	private Supplier<Authentication> authentication;
+	private MethodInvocation requiresRestaurantGrantInvocation;
+	private MethodInvocation preAuthorizeInvocation;
+
+	@Setup
+	public void setup() throws NoSuchMethodException {
+		final var claims = new OpenidClaimSet(
+				Map
+						.of(
+								"iss",
+								"https://localhost:8443/realms/sushibach",
+								"sub",
+								"ch4mp",
+								EGastroAuthentication.GRANT_MASKS_CLAIM,
+								Map.of(RESTAURANT_ID.toString(), RestaurantGrant.VIEW_ORDERS.mask(), "51", RestaurantGrant.MANAGER.mask())));
+		final var auth = new EGastroAuthentication(claims, List.of(), "token");
+		authentication = () -> auth;
+		// expression roots read the authentication from the security context, and benchmark methods may run on other threads than this setup
+		SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+		SecurityContextHolder.getContext().setAuthentication(auth);
+
+		preAuthorize.setExpressionHandler(new SecurityConfig().methodSecurityExpressionHandler());
+
+		final var kitchen = new Kitchen();
+		requiresRestaurantGrantInvocation = new SimpleMethodInvocation(
+				kitchen,
+				Kitchen.class.getMethod("viewOrdersWithRequiresRestaurantGrant", Long.class),
+				RESTAURANT_ID);
+		preAuthorizeInvocation = new SimpleMethodInvocation(kitchen, Kitchen.class.getMethod("viewOrdersWithPreAuthorize", Long.class), RESTAURANT_ID);
+	}
+
+	@Benchmark
+	public AuthorizationDecision requiresRestaurantGrant() {
+		return requiresRestaurantGrant.check(authentication, requiresRestaurantGrantInvocation);
+	}
+
+	@Benchmark
+	public AuthorizationDecision preAuthorize() {
+		return preAuthorize.check(authentication, preAuthorizeInvocation);
+	}
+
+	public static class Kitchen {
+		@RequiresRestaurantGrant(param = "restaurantId", grant = RestaurantGrant.VIEW_ORDERS)
+		public void viewOrdersWithRequiresRestaurantGrant(Long restaurantId) {
+		}
+
+		@PreAuthorize("on(#restaurantId).isGrantedWith('VIEW_ORDERS')")
+		public void viewOrdersWithPreAuthorize(Long restaurantId) {
+		}
+	}
+}
@@ -10,11 +10,13 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import de.egastro.training.oidc.domain.Restaurant;
 import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
 
 @SpringBootApplication
+@EnableScheduling
 public class ManagementConsoleApi {
 
 	public static void main(String[] args) {
@@ -40,12 +42,12 @@ public class ManagementConsoleApi {
 
 		final var restaurantRepo = ctx.getBean(RestaurantRepository.class);
 
-		final var sushibach = restaurantRepo.findByAuthorizedParty("sushibach");
+		final var sushibach = restaurantRepo.findByAuthorizedPartyAndDeletedAtIsNull("sushibach");
 		if (sushibach.isEmpty()) {
 			restaurantRepo.save(new Restaurant("Sushi Bach", "sushibach"));
 		}
 
-		final var burgerHouse = restaurantRepo.findByAuthorizedParty("burger-house");
+		final var burgerHouse = restaurantRepo.findByAuthorizedPartyAndDeletedAtIsNull("burger-house");
 		if (burgerHouse.isEmpty()) {
 			restaurantRepo.save(new Restaurant("Burger House", "burger-house"));
 		}
@@ -0,0 +1,61 @@
+package de.egastro.training.oidc.domain;
+
+import java.time.Instant;
+
+import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Picked {@link Order} moved out of the hot orders table by the archival job. Rows are written with set-based statements only: there is no relation to
+ * other entities, which keeps archived orders readable after their dishes are deleted. They are deleted with the rest of their restaurant data when the
+ * restaurant is purged.
+ */
+@Entity(name = "archived_orders")
+@Table(name = "orders_archive", indexes = { @Index(name = "idx_orders_archive_restaurant_passed_at", columnList = "restaurant_id, passed_at, id") })
+@Data
+@NoArgsConstructor
+public class ArchivedOrder {
+
+	@Id
+	private Long id;
+
+	@Column(name = "restaurant_id", nullable = false)
+	private Long restaurantId;
+
+	@Column(nullable = false)
+	private String customerName;
+
+	@Column(nullable = false)
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant passedAt;
+
+	@Column(nullable = false)
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant askedFor;
+
+	@Column
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant engagedFor;
+
+	@Column
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant readyAt;
+
+	@Column
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant pickedAt;
+
+	@Column(nullable = false)
+	private Long version;
+
+	@Column(nullable = false)
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant archivedAt;
+}
@@ -0,0 +1,51 @@
+package de.egastro.training.oidc.domain;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * {@link OrderLine} of an {@link ArchivedOrder}, with a copy of the dish name and price at archival time
+ */
+@Entity
+@Table(name = "order_line_archive")
+@IdClass(ArchivedOrderLine.ArchivedOrderLineId.class)
+@Data
+@NoArgsConstructor
+public class ArchivedOrderLine {
+
+	@Id
+	@Column(name = "order_id")
+	private Long orderId;
+
+	@Id
+	@Column(name = "dish_id")
+	private Long dishId;
+
+	@Column(nullable = false)
+	private String dishName;
+
+	@Column(nullable = false)
+	private Integer dishPriceInCents;
+
+	@Column(nullable = false)
+	private Integer quantity;
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class ArchivedOrderLineId implements Serializable {
+		private static final long serialVersionUID = 3270180316290315224L;
+
+		private Long orderId;
+
+		private Long dishId;
+	}
+}
@@ -0,0 +1,50 @@
+package de.egastro.training.oidc.domain;
+
+import java.time.Instant;
+
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Response recorded for an Idempotency-Key header, to replay it when a client retries a request
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_created_at", columnList = "created_at"))
+@Data
+@NoArgsConstructor
+public class IdempotencyKey {
+
+	/**
+	 * SHA-256 (hex) of the key scoped to the user and the restaurant
+	 */
+	@Id
+	@Column(length = 64)
+	private String id;
+
+	/**
+	 * SHA-256 (hex) of the request body: a key can't be reused for another request
+	 */
+	@Column(nullable = false, length = 64)
+	private String fingerprint;
+
+	@Column(nullable = false)
+	private String location;
+
+	@Column(nullable = false)
+	@JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+	private String responseBody;
+
+	@Column(name = "created_at", nullable = false)
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant createdAt;
+}
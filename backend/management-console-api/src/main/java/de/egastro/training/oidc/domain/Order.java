@@ -4,6 +4,8 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
@@ -11,14 +13,25 @@ import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Entity(name = "orders")
-@Table(name = "orders")
+@Table(
+		name = "orders",
+		indexes = {
+				@Index(name = "idx_orders_restaurant_passed_at", columnList = "restaurant_id, passed_at, id"),
+				@Index(name = "idx_orders_restaurant_asked_for", columnList = "restaurant_id, asked_for"),
+				@Index(name = "idx_orders_restaurant_picked_at", columnList = "restaurant_id, picked_at"),
+				@Index(name = "idx_orders_picked_at", columnList = "picked_at"),
+				@Index(name = "idx_orders_restaurant_customer_name", columnList = "restaurant_id, customer_name") })
 @Data
 @NoArgsConstructor
 public class Order {
@@ -34,6 +47,8 @@ public class Order {
 	private Restaurant restaurant;
 
 	@OneToMany(orphanRemoval = true, cascade = CascadeType.ALL, mappedBy = "id.order")
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
 	private List<OrderLine> lines = new ArrayList<>();
 
 	@Column(nullable = false)
@@ -56,6 +71,11 @@ public class Order {
 	@Convert(converter = InstantEpochSecondConverter.class)
 	private Instant pickedAt;
 
+	@Version
+	@Column(nullable = false)
+	@ColumnDefault("0")
+	private Long version;
+
 	public Order(Restaurant restaurant, String customerName, List<OrderLine> lines, Instant passedAt, Instant askedFor) {
 		super();
 		this.customerName = customerName;
@@ -0,0 +1,66 @@
+package de.egastro.training.oidc.domain;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Hourly rollup of the orders passed by a restaurant customers. Counters are additive: they are incremented by the orders write paths and days, weeks,
+ * etc. are sums of hours.
+ * <p>
+ * Orders are accounted in the hour they were passed. Only orders with both engagedFor and readyAt set count in preparedCount and prepTimeSeconds (which is
+ * the sum of their readyAt - engagedFor).
+ */
+@Entity
+@Table(name = "order_stats_hourly")
+@IdClass(OrderStatsBucket.OrderStatsBucketId.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatsBucket {
+
+	@Id
+	@Column(name = "restaurant_id")
+	private Long restaurantId;
+
+	/**
+	 * epoch second of the beginning of the hour (UTC)
+	 */
+	@Id
+	@Column(name = "hour_start")
+	private Long hourStart;
+
+	@Column(nullable = false)
+	private long orderCount;
+
+	@Column(nullable = false)
+	private long revenueInCents;
+
+	@Column(nullable = false)
+	private long preparedCount;
+
+	@Column(nullable = false)
+	private long prepTimeSeconds;
+
+	public OrderStatsBucket(Long restaurantId, Long hourStart) {
+		this(restaurantId, hourStart, 0L, 0L, 0L, 0L);
+	}
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class OrderStatsBucketId implements Serializable {
+		private static final long serialVersionUID = -6188720467937313473L;
+
+		private Long restaurantId;
+
+		private Long hourStart;
+	}
+}
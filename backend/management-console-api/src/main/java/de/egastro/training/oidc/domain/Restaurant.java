@@ -1,24 +1,32 @@
 package de.egastro.training.oidc.domain;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.validator.constraints.Length;
 
+import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.OrderBy;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
 @Entity(name = "restaurants")
-@Table(name = "restaurants", uniqueConstraints = { @UniqueConstraint(columnNames = { "authorized_party", "name" }) })
+@Table(name = "restaurants", uniqueConstraints = { @UniqueConstraint(columnNames = { "authorized_party", "normalized_name" }) })
 @Data
 @NoArgsConstructor
 public class Restaurant implements Serializable {
@@ -37,12 +45,54 @@ public class Restaurant implements Serializable {
 	@Length(min = 1)
 	private String name;
 
+	/**
+	 * {@link #normalizeName(String) Normalized} name, set with the name: the unique constraint (and index) for case-insensitive names in an authorized party.
+	 * Null for deleted restaurants, and for the rows created before this column until they are backfilled.
+	 */
+	@Column(name = "normalized_name")
+	@Setter(AccessLevel.NONE)
+	private String normalizedName;
+
 	@Column(name = "authorized_party", nullable = false)
 	private String authorizedParty;
 
 	@OneToMany(orphanRemoval = true, cascade = CascadeType.ALL, mappedBy = "restaurant")
+	@OrderBy("id")
 	private List<Dish> dishes = new ArrayList<>();
 
+	/**
+	 * Incremented with each change to the dishes (see {@link de.egastro.training.oidc.domain.persistence.RestaurantRepository#incrementMenuVersion(Long)}):
+	 * the menu ETag
+	 */
+	@Column(nullable = false)
+	@ColumnDefault("0")
+	private Long menuVersion = 0L;
+
 	@OneToMany(orphanRemoval = true, cascade = CascadeType.ALL, mappedBy = "restaurant")
 	private List<Order> orders = new ArrayList<>();
+
+	/**
+	 * Set when the restaurant is deleted: it is then ignored until its data is purged (see {@link RestaurantPurge})
+	 */
+	@Column
+	@Convert(converter = InstantEpochSecondConverter.class)
+	@Setter(AccessLevel.NONE)
+	private Instant deletedAt;
+
+	public void setName(String name) {
+		this.name = name;
+		this.normalizedName = normalizeName(name);
+	}
+
+	/**
+	 * Also releases the name, which can be given to a new restaurant without waiting for the end of the purge
+	 */
+	public void markDeleted(Instant deletedAt) {
+		this.deletedAt = deletedAt;
+		this.normalizedName = null;
+	}
+
+	public static String normalizeName(String name) {
+		return name == null ? null : name.toLowerCase(Locale.ROOT);
+	}
 }
@@ -1,5 +1,31 @@
 package de.egastro.training.oidc.domain;
 
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The ordinals are the bits of the compact grants claim (grantMasksByRestaurantId): new values must be appended, and existing ones never removed nor
+ * reordered.
+ */
 public enum RestaurantGrant {
 	MANAGER, EDIT_MENUS, UPDATE_ORDERS, VIEW_ORDERS, VIEW_CUSTOMER;
+
+	private static final RestaurantGrant[] VALUES = values();
+
+	public int mask() {
+		return 1 << ordinal();
+	}
+
+	/**
+	 * @return the grants with a bit set in the mask (unknown bits are ignored)
+	 */
+	public static Set<RestaurantGrant> fromMask(int mask) {
+		final var grants = EnumSet.noneOf(RestaurantGrant.class);
+		for (final var grant : VALUES) {
+			if ((mask & grant.mask()) != 0) {
+				grants.add(grant);
+			}
+		}
+		return grants;
+	}
 }
@@ -0,0 +1,85 @@
+package de.egastro.training.oidc.domain;
+
+import java.time.Instant;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
+import de.egastro.training.oidc.dtos.restaurants.RestaurantPurgeStatus;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of the asynchronous deletion of a {@link Restaurant} and of all its data. The restaurant is referenced by ID only: this record outlives it.
+ */
+@Entity
+@Table(name = "restaurant_purges", indexes = @Index(name = "idx_restaurant_purges_status", columnList = "status"))
+@Data
+@NoArgsConstructor
+public class RestaurantPurge {
+	public static final int MAX_ERROR_LENGTH = 1024;
+
+	public RestaurantPurge(Restaurant restaurant, Instant startedAt) {
+		this.restaurantId = restaurant.getId();
+		this.authorizedParty = restaurant.getAuthorizedParty();
+		this.restaurantName = restaurant.getName();
+		this.startedAt = startedAt;
+	}
+
+	@Id
+	@GeneratedValue
+	private Long id;
+
+	@Column(name = "restaurant_id", nullable = false)
+	private Long restaurantId;
+
+	@Column(nullable = false)
+	private String authorizedParty;
+
+	@Column(nullable = false)
+	private String restaurantName;
+
+	@Enumerated(EnumType.STRING)
+	@Column(name = "status", nullable = false)
+	private RestaurantPurgeStatus status = RestaurantPurgeStatus.PENDING;
+
+	@Column(nullable = false)
+	private Long deletedGrants = 0L;
+
+	@Column(nullable = false)
+	private Long deletedOrders = 0L;
+
+	@Column(nullable = false)
+	private Long deletedOrderLines = 0L;
+
+	@Column(nullable = false)
+	@ColumnDefault("0")
+	private Long deletedArchivedOrders = 0L;
+
+	@Column(nullable = false)
+	@ColumnDefault("0")
+	private Long deletedArchivedOrderLines = 0L;
+
+	@Column(nullable = false)
+	private Long deletedDishes = 0L;
+
+	@Column(nullable = false)
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant startedAt;
+
+	@Column
+	@Convert(converter = InstantEpochSecondConverter.class)
+	private Instant endedAt;
+
+	@Column(length = MAX_ERROR_LENGTH)
+	private String error;
+}
@@ -7,10 +7,18 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+/**
+ * The unique constraint index has username as its leading column: it also serves the lookups by username
+ */
 @Entity
+@Table(
+		name = "user_restaurant_grant",
+		uniqueConstraints = @UniqueConstraint(name = "uk_user_restaurant_grant", columnNames = { "username", "restaurant_id", "grant_label" }))
 @Data
 @NoArgsConstructor
 public class UserRestaurantGrant {
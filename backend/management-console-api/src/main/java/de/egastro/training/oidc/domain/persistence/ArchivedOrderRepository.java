@@ -0,0 +1,98 @@
+package de.egastro.training.oidc.domain.persistence;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import de.egastro.training.oidc.domain.ArchivedOrder;
+import jakarta.persistence.QueryHint;
+
+public interface ArchivedOrderRepository extends JpaRepository<ArchivedOrder, Long> {
+
+	/**
+	 * First page of a restaurant archived orders, most recent first
+	 */
+	List<ArchivedOrder> findByRestaurantIdOrderByPassedAtDescIdDesc(Long restaurantId, Limit limit);
+
+	/**
+	 * Keyset pagination: archived orders passed strictly before the (passedAt, id) of the last order of the previous page, most recent first
+	 */
+	@Query("""
+			SELECT o FROM archived_orders o
+			WHERE o.restaurantId = :restaurantId
+			AND (o.passedAt < :passedAt OR (o.passedAt = :passedAt AND o.id < :id))
+			ORDER BY o.passedAt DESC, o.id DESC""")
+	List<ArchivedOrder> findByRestaurantIdBefore(
+			@Param("restaurantId") Long restaurantId,
+			@Param("passedAt") Instant passedAt,
+			@Param("id") Long id,
+			Limit limit);
+
+	@Query("""
+			SELECT new de.egastro.training.oidc.domain.persistence.OrderLineRow(l.orderId, l.dishId, l.dishName, l.dishPriceInCents, l.quantity)
+			FROM ArchivedOrderLine l
+			WHERE l.orderId IN :orderIds
+			ORDER BY l.orderId, l.dishId""")
+	List<OrderLineRow> findLineRowsByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
+	/**
+	 * Same as {@link OrderRepository#streamStatsRows(Long, Instant, Instant)}, with the dish prices copied at archival time
+	 */
+	@QueryHints({
+			@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = OrderRepository.EXPORT_FETCH_SIZE),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+	@Query("""
+			SELECT new de.egastro.training.oidc.domain.persistence.OrderStatsRow(o.passedAt, o.engagedFor, o.readyAt, SUM(l.quantity * l.dishPriceInCents))
+			FROM archived_orders o LEFT JOIN ArchivedOrderLine l ON l.orderId = o.id
+			WHERE o.restaurantId = :restaurantId AND o.passedAt >= :from AND o.passedAt < :to
+			GROUP BY o.id, o.passedAt, o.engagedFor, o.readyAt""")
+	Stream<OrderStatsRow> streamStatsRows(@Param("restaurantId") Long restaurantId, @Param("from") Instant from, @Param("to") Instant to);
+
+	/*-------------------------------------------------------------------------------*/
+	/* Archival: set-based copies of the hot tables rows, without loading any entity */
+	/*-------------------------------------------------------------------------------*/
+
+	/**
+	 * @param archivedAtEpochSecond already converted, and explicitly typed: Hibernate binds an Instant parameter of an INSERT ... SELECT as a timestamp,
+	 *                              without applying the target attribute converter (see OrdersArchiverTests)
+	 */
+	@Modifying
+	@Query("""
+			INSERT INTO archived_orders (id, restaurantId, customerName, passedAt, askedFor, engagedFor, readyAt, pickedAt, version, archivedAt)
+			SELECT o.id, o.restaurant.id, o.customerName, o.passedAt, o.askedFor, o.engagedFor, o.readyAt, o.pickedAt, o.version, CAST(:archivedAtEpochSecond AS Long)
+			FROM orders o
+			WHERE o.id IN :orderIds""")
+	int copyOrders(@Param("orderIds") Collection<Long> orderIds, @Param("archivedAtEpochSecond") Long archivedAtEpochSecond);
+
+	@Modifying
+	@Query("""
+			INSERT INTO ArchivedOrderLine (orderId, dishId, dishName, dishPriceInCents, quantity)
+			SELECT o.id, d.id, d.name, d.priceInCents, l.quantity
+			FROM OrderLine l JOIN l.id.order o JOIN l.id.dish d
+			WHERE o.id IN :orderIds""")
+	int copyOrderLines(@Param("orderIds") Collection<Long> orderIds);
+
+	/**
+	 * Batches of a deleted restaurant archived orders (see RestaurantsPurger)
+	 */
+	@Query("SELECT o.id FROM archived_orders o WHERE o.restaurantId = :restaurantId ORDER BY o.id")
+	List<Long> findIdsByRestaurantId(@Param("restaurantId") Long restaurantId, Limit limit);
+
+	@Modifying
+	@Query("DELETE FROM ArchivedOrderLine l WHERE l.orderId IN :orderIds")
+	int deleteLinesByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
+	@Modifying
+	@Query("DELETE FROM archived_orders o WHERE o.id IN :orderIds")
+	int deleteByIdIn(@Param("orderIds") Collection<Long> orderIds);
+}
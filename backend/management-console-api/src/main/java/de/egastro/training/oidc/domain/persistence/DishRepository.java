@@ -1,9 +1,39 @@
 package de.egastro.training.oidc.domain.persistence;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import de.egastro.training.oidc.domain.Dish;
 
 public interface DishRepository extends JpaRepository<Dish, Long>, JpaSpecificationExecutor<Dish> {
+
+	/**
+	 * Dish names are unique across all restaurants
+	 */
+	@Query("SELECT d.name FROM dishes d WHERE d.name IN :names AND d.restaurant.id <> :restaurantId")
+	List<String> findNamesUsedByOtherRestaurants(@Param("names") Collection<String> names, @Param("restaurantId") Long restaurantId);
+
+	/**
+	 * @return the IDs of the dishes in at least one order line (they can't be deleted)
+	 */
+	@Query("SELECT DISTINCT l.id.dish.id FROM OrderLine l WHERE l.id.dish.id IN :dishIds")
+	List<Long> findOrderedDishIds(@Param("dishIds") Collection<Long> dishIds);
+
+	/*--------------------------------------------------------------------------*/
+	/* Purge of a deleted restaurant: bounded batches of ids, then bulk deletes */
+	/*--------------------------------------------------------------------------*/
+
+	@Query("SELECT d.id FROM dishes d WHERE d.restaurant.id = :restaurantId ORDER BY d.id")
+	List<Long> findIdsByRestaurantId(@Param("restaurantId") Long restaurantId, Limit limit);
+
+	@Modifying
+	@Query("DELETE FROM dishes d WHERE d.id IN :dishIds")
+	int deleteByIdIn(@Param("dishIds") Collection<Long> dishIds);
 }
@@ -0,0 +1,41 @@
+package de.egastro.training.oidc.domain.persistence;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import de.egastro.training.oidc.domain.IdempotencyKey;
+
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+	/**
+	 * Plain INSERT, executed immediately: a concurrent request with the same key (from another instance) fails here with a unique constraint violation
+	 *
+	 * @param createdAtEpochSecond already converted, and explicitly typed: Hibernate binds an Instant parameter of an INSERT as a timestamp, without applying
+	 *                             the target attribute converter (see IdempotencyKeysTests)
+	 */
+	@Modifying
+	@Query("""
+			INSERT INTO IdempotencyKey (id, fingerprint, location, responseBody, createdAt)
+			VALUES (:id, :fingerprint, :location, :responseBody, CAST(:createdAtEpochSecond AS Long))""")
+	int insert(
+			@Param("id") String id,
+			@Param("fingerprint") String fingerprint,
+			@Param("location") String location,
+			@Param("responseBody") String responseBody,
+			@Param("createdAtEpochSecond") Long createdAtEpochSecond);
+
+	/**
+	 * Releases an expired key not purged yet, for a new request to {@link #insert} it again
+	 */
+	@Modifying
+	@Query("DELETE FROM IdempotencyKey k WHERE k.id = :id AND k.createdAt < :createdBefore")
+	int deleteExpired(@Param("id") String id, @Param("createdBefore") Instant createdBefore);
+
+	@Modifying
+	@Query("DELETE FROM IdempotencyKey k WHERE k.createdAt < :createdBefore")
+	int deleteByCreatedAtBefore(@Param("createdBefore") Instant createdBefore);
+}
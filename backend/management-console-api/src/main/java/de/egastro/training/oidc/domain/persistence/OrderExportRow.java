@@ -0,0 +1,22 @@
+package de.egastro.training.oidc.domain.persistence;
+
+import java.time.Instant;
+
+/**
+ * Flat projection of an {@link de.egastro.training.oidc.domain.Order} joined with one of its lines and the line dish (line and dish columns are null for
+ * orders without lines). Nothing is attached to the persistence context, which keeps memory flat when streaming.
+ */
+public record OrderExportRow(
+		Long orderId,
+		String customerName,
+		Instant passedAt,
+		Instant askedFor,
+		Instant engagedFor,
+		Instant readyAt,
+		Instant pickedAt,
+		Long version,
+		Long dishId,
+		String dishName,
+		Integer dishPriceInCents,
+		Integer quantity) {
+}
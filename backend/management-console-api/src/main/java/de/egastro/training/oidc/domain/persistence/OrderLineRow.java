@@ -0,0 +1,7 @@
+package de.egastro.training.oidc.domain.persistence;
+
+/**
+ * Flat projection of an {@link de.egastro.training.oidc.domain.OrderLine} and its dish, to build order DTOs without hydrating entities
+ */
+public record OrderLineRow(Long orderId, Long dishId, String dishName, Integer dishPriceInCents, Integer quantity) {
+}
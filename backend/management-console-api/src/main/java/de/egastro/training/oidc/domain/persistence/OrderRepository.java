@@ -1,9 +1,113 @@
 package de.egastro.training.oidc.domain.persistence;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import de.egastro.training.oidc.domain.Order;
+import jakarta.persistence.QueryHint;
 
 public interface OrderRepository extends JpaRepository<Order, Long>, JpaSpecificationExecutor<Order> {
+	String EXPORT_FETCH_SIZE = "500";
+
+	/**
+	 * Lines of many orders, with their dish, in a single statement
+	 */
+	@Query("""
+			SELECT new de.egastro.training.oidc.domain.persistence.OrderLineRow(o.id, d.id, d.name, d.priceInCents, l.quantity)
+			FROM OrderLine l JOIN l.id.order o JOIN l.id.dish d
+			WHERE o.id IN :orderIds
+			ORDER BY o.id, d.id""")
+	List<OrderLineRow> findLineRowsByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
+	/**
+	 * Orders passed by a restaurant customers in [from, to), one row per order line, sorted by passedAt and id (rows of an order are contiguous).
+	 * <p>
+	 * Rows are fetched from the database by chunks of EXPORT_FETCH_SIZE as the stream is consumed: the stream must be consumed and closed inside a
+	 * transaction (MySQL needs useCursorFetch=true in the JDBC URL for the fetch size to be honored).
+	 */
+	@QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE), @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+	@Query("""
+			SELECT new de.egastro.training.oidc.domain.persistence.OrderExportRow(
+				o.id, o.customerName, o.passedAt, o.askedFor, o.engagedFor, o.readyAt, o.pickedAt, o.version,
+				d.id, d.name, d.priceInCents, l.quantity)
+			FROM orders o LEFT JOIN o.lines l LEFT JOIN l.id.dish d
+			WHERE o.restaurant.id = :restaurantId AND o.passedAt >= :from AND o.passedAt < :to
+			ORDER BY o.passedAt, o.id, d.id""")
+	Stream<OrderExportRow> streamExportRows(@Param("restaurantId") Long restaurantId, @Param("from") Instant from, @Param("to") Instant to);
+
+	/**
+	 * Statistics contribution of each order passed by a restaurant customers in [from, to), to recompute {@link OrderStatsRepository} hours. Same
+	 * consumption constraints as {@link #streamExportRows(Long, Instant, Instant)}.
+	 */
+	@QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE), @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+	@Query("""
+			SELECT new de.egastro.training.oidc.domain.persistence.OrderStatsRow(o.passedAt, o.engagedFor, o.readyAt, SUM(l.quantity * d.priceInCents))
+			FROM orders o LEFT JOIN o.lines l LEFT JOIN l.id.dish d
+			WHERE o.restaurant.id = :restaurantId AND o.passedAt >= :from AND o.passedAt < :to
+			GROUP BY o.id, o.passedAt, o.engagedFor, o.readyAt""")
+	Stream<OrderStatsRow> streamStatsRows(@Param("restaurantId") Long restaurantId, @Param("from") Instant from, @Param("to") Instant to);
+
+	boolean existsByIdAndRestaurantId(Long id, Long restaurantId);
+
+	/*--------------------------------------------------------------------------------------------------------------------*/
+	/* Order lifecycle: single conditional statements, guarded by the version. Return the number of updated rows (0 or 1) */
+	/*--------------------------------------------------------------------------------------------------------------------*/
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("""
+			UPDATE orders o SET o.engagedFor = :engagedFor, o.version = o.version + 1
+			WHERE o.id = :id AND o.restaurant.id = :restaurantId AND o.version = :version
+			AND o.readyAt IS NULL AND o.pickedAt IS NULL""")
+	int engage(
+			@Param("id") Long id,
+			@Param("restaurantId") Long restaurantId,
+			@Param("version") Long version,
+			@Param("engagedFor") Instant engagedFor);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("""
+			UPDATE orders o SET o.readyAt = :readyAt, o.version = o.version + 1
+			WHERE o.id = :id AND o.restaurant.id = :restaurantId AND o.version = :version
+			AND o.engagedFor IS NOT NULL AND o.readyAt IS NULL AND o.pickedAt IS NULL""")
+	int markReady(@Param("id") Long id, @Param("restaurantId") Long restaurantId, @Param("version") Long version, @Param("readyAt") Instant readyAt);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("""
+			UPDATE orders o SET o.pickedAt = :pickedAt, o.version = o.version + 1
+			WHERE o.id = :id AND o.restaurant.id = :restaurantId AND o.version = :version
+			AND o.readyAt IS NOT NULL AND o.pickedAt IS NULL""")
+	int markPicked(@Param("id") Long id, @Param("restaurantId") Long restaurantId, @Param("version") Long version, @Param("pickedAt") Instant pickedAt);
+
+	/*----------------------------------------------------------------------------------------*/
+	/* Archival (see ArchivedOrderRepository): bounded batches of ids, then set-based deletes */
+	/*----------------------------------------------------------------------------------------*/
+
+	@Query("SELECT o.id FROM orders o WHERE o.pickedAt < :pickedBefore ORDER BY o.id")
+	List<Long> findIdsPickedBefore(@Param("pickedBefore") Instant pickedBefore, Limit limit);
+
+	/**
+	 * Batches of a deleted restaurant orders (see RestaurantsPurger)
+	 */
+	@Query("SELECT o.id FROM orders o WHERE o.restaurant.id = :restaurantId ORDER BY o.id")
+	List<Long> findIdsByRestaurantId(@Param("restaurantId") Long restaurantId, Limit limit);
+
+	@Modifying
+	@Query("DELETE FROM OrderLine l WHERE l.id.order.id IN :orderIds")
+	int deleteLinesByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
+	@Modifying
+	@Query("DELETE FROM orders o WHERE o.id IN :orderIds")
+	int deleteByIdIn(@Param("orderIds") Collection<Long> orderIds);
 }
@@ -0,0 +1,78 @@
+package de.egastro.training.oidc.domain.persistence;
+
+import java.time.Instant;
+import java.util.Collection;
+
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.StringUtils;
+
+import de.egastro.training.oidc.domain.Order;
+import de.egastro.training.oidc.domain.Order_;
+import de.egastro.training.oidc.domain.Restaurant_;
+import de.egastro.training.oidc.dtos.restaurants.OrderStatus;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * Filters for {@link OrderRepository} (which is a JpaSpecificationExecutor). Each filter is backed by an index on the orders table (see {@link Order}). All
+ * return null when there is nothing to filter, which {@link Specification#and(Specification)} ignores.
+ */
+public final class OrderSpecifications {
+
+	private OrderSpecifications() {
+	}
+
+	public static Specification<Order> ofRestaurant(Long restaurantId) {
+		return (root, query, cb) -> cb.equal(root.get(Order_.restaurant).get(Restaurant_.id), restaurantId);
+	}
+
+	public static Specification<Order> askedForBetween(Instant from, Instant to) {
+		if (from == null && to == null) {
+			return null;
+		}
+		return (root, query, cb) -> {
+			if (from == null) {
+				return cb.lessThan(root.get(Order_.askedFor), to);
+			}
+			if (to == null) {
+				return cb.greaterThanOrEqualTo(root.get(Order_.askedFor), from);
+			}
+			return cb.and(cb.greaterThanOrEqualTo(root.get(Order_.askedFor), from), cb.lessThan(root.get(Order_.askedFor), to));
+		};
+	}
+
+	public static Specification<Order> withStatusIn(Collection<OrderStatus> statuses) {
+		if (statuses == null || statuses.isEmpty()) {
+			return null;
+		}
+		return (root, query, cb) -> cb.or(statuses.stream().map(status -> hasStatus(root, cb, status)).toArray(Predicate[]::new));
+	}
+
+	public static Specification<Order> passedBy(String customerName) {
+		if (!StringUtils.hasText(customerName)) {
+			return null;
+		}
+		return (root, query, cb) -> cb.equal(root.get(Order_.customerName), customerName);
+	}
+
+	/**
+	 * Keyset pagination: orders passed strictly before the (passedAt, id) of the last order of the previous page, when sorted by passedAt and id
+	 * descending
+	 */
+	public static Specification<Order> passedBefore(Instant passedAt, Long id) {
+		return (root, query, cb) -> cb
+				.or(
+						cb.lessThan(root.get(Order_.passedAt), passedAt),
+						cb.and(cb.equal(root.get(Order_.passedAt), passedAt), cb.lessThan(root.get(Order_.id), id)));
+	}
+
+	private static Predicate hasStatus(Root<Order> root, CriteriaBuilder cb, OrderStatus status) {
+		return switch (status) {
+		case PENDING -> cb.and(cb.isNull(root.get(Order_.engagedFor)), cb.isNull(root.get(Order_.readyAt)), cb.isNull(root.get(Order_.pickedAt)));
+		case ENGAGED -> cb.and(cb.isNotNull(root.get(Order_.engagedFor)), cb.isNull(root.get(Order_.readyAt)), cb.isNull(root.get(Order_.pickedAt)));
+		case READY -> cb.and(cb.isNotNull(root.get(Order_.readyAt)), cb.isNull(root.get(Order_.pickedAt)));
+		case PICKED -> cb.isNotNull(root.get(Order_.pickedAt));
+		};
+	}
+}
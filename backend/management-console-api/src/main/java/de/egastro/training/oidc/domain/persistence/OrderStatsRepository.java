@@ -0,0 +1,68 @@
+package de.egastro.training.oidc.domain.persistence;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import de.egastro.training.oidc.domain.OrderStatsBucket;
+import de.egastro.training.oidc.domain.OrderStatsBucket.OrderStatsBucketId;
+import jakarta.persistence.LockModeType;
+
+public interface OrderStatsRepository extends JpaRepository<OrderStatsBucket, OrderStatsBucketId> {
+
+	/**
+	 * @param from epoch second, inclusive
+	 * @param to   epoch second, exclusive
+	 */
+	@Query("""
+			SELECT b FROM OrderStatsBucket b
+			WHERE b.restaurantId = :restaurantId AND b.hourStart >= :from AND b.hourStart < :to
+			ORDER BY b.hourStart""")
+	List<OrderStatsBucket> findHours(@Param("restaurantId") Long restaurantId, @Param("from") long from, @Param("to") long to);
+
+	/**
+	 * Same as {@link #findHours(Long, long, long)}, with a write lock on the buckets held until the end of the transaction: concurrent increments wait
+	 *
+	 * @param from epoch second, inclusive
+	 * @param to   epoch second, exclusive
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("""
+			SELECT b FROM OrderStatsBucket b
+			WHERE b.restaurantId = :restaurantId AND b.hourStart >= :from AND b.hourStart < :to
+			ORDER BY b.hourStart""")
+	List<OrderStatsBucket> lockHours(@Param("restaurantId") Long restaurantId, @Param("from") long from, @Param("to") long to);
+
+	/**
+	 * Atomic increment of an hour counters (concurrent write paths don't lose updates)
+	 *
+	 * @return 0 if the bucket does not exist yet
+	 */
+	@Modifying
+	@Query("""
+			UPDATE OrderStatsBucket b SET
+				b.orderCount = b.orderCount + :orderCount,
+				b.revenueInCents = b.revenueInCents + :revenueInCents,
+				b.preparedCount = b.preparedCount + :preparedCount,
+				b.prepTimeSeconds = b.prepTimeSeconds + :prepTimeSeconds
+			WHERE b.restaurantId = :restaurantId AND b.hourStart = :hourStart""")
+	int increment(
+			@Param("restaurantId") Long restaurantId,
+			@Param("hourStart") long hourStart,
+			@Param("orderCount") long orderCount,
+			@Param("revenueInCents") long revenueInCents,
+			@Param("preparedCount") long preparedCount,
+			@Param("prepTimeSeconds") long prepTimeSeconds);
+
+	@Modifying
+	@Query("DELETE FROM OrderStatsBucket b WHERE b.restaurantId = :restaurantId AND b.hourStart >= :from AND b.hourStart < :to")
+	int deleteHours(@Param("restaurantId") Long restaurantId, @Param("from") long from, @Param("to") long to);
+
+	@Modifying
+	@Query("DELETE FROM OrderStatsBucket b WHERE b.restaurantId = :restaurantId")
+	int deleteByRestaurantId(@Param("restaurantId") Long restaurantId);
+}
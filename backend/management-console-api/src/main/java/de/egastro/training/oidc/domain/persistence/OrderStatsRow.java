@@ -0,0 +1,9 @@
+package de.egastro.training.oidc.domain.persistence;
+
+import java.time.Instant;
+
+/**
+ * What an order contributes to the {@link de.egastro.training.oidc.domain.OrderStatsBucket} of the hour it was passed
+ */
+public record OrderStatsRow(Instant passedAt, Instant engagedFor, Instant readyAt, Long revenueInCents) {
+}
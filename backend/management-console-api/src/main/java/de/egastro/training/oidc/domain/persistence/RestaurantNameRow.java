@@ -0,0 +1,7 @@
+package de.egastro.training.oidc.domain.persistence;
+
+/**
+ * Flat projection of a {@link de.egastro.training.oidc.domain.Restaurant} identity, to build search indexes without hydrating entities
+ */
+public record RestaurantNameRow(Long id, String authorizedParty, String name) {
+}
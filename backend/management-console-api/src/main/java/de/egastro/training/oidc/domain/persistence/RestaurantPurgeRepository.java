@@ -0,0 +1,14 @@
+package de.egastro.training.oidc.domain.persistence;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import de.egastro.training.oidc.domain.RestaurantPurge;
+import de.egastro.training.oidc.dtos.restaurants.RestaurantPurgeStatus;
+
+public interface RestaurantPurgeRepository extends JpaRepository<RestaurantPurge, Long> {
+
+	List<RestaurantPurge> findByStatusIn(Collection<RestaurantPurgeStatus> statuses);
+}
@@ -1,15 +1,81 @@
 package de.egastro.training.oidc.domain.persistence;
 
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import de.egastro.training.oidc.domain.Restaurant;
 
 public interface RestaurantRepository extends JpaRepository<Restaurant, Long>, JpaSpecificationExecutor<Restaurant> {
 
-	List<Restaurant> findByAuthorizedParty(String authorizedParty);
+	/**
+	 * Restaurants marked as deleted are ignored: their data is being purged
+	 */
+	@Override
+	@Query("SELECT r FROM restaurants r WHERE r.id = :id AND r.deletedAt IS NULL")
+	Optional<Restaurant> findById(@Param("id") Long id);
 
-	List<Restaurant> findByAuthorizedPartyContainsIgnoreCase(String authorizedParty);
+	List<Restaurant> findByAuthorizedPartyAndDeletedAtIsNull(String authorizedParty);
+
+	/**
+	 * A probe of the (authorized_party, normalized_name) unique index
+	 *
+	 * @param normalizedName see {@link Restaurant#normalizeName(String)}
+	 */
+	boolean existsByAuthorizedPartyAndNormalizedName(String authorizedParty, String normalizedName);
+
+	/**
+	 * Same probe as {@link #existsByAuthorizedPartyAndNormalizedName(String, String)}, ignoring a restaurant being renamed
+	 */
+	boolean existsByAuthorizedPartyAndNormalizedNameAndIdNot(String authorizedParty, String normalizedName, Long id);
+
+	/**
+	 * Keyset pagination of the restaurants created before the normalized name column existed (see RestaurantNamesBackfill)
+	 */
+	@Query("""
+			SELECT new de.egastro.training.oidc.domain.persistence.RestaurantNameRow(r.id, r.authorizedParty, r.name) FROM restaurants r
+			WHERE r.normalizedName IS NULL AND r.deletedAt IS NULL AND r.id > :afterId
+			ORDER BY r.id""")
+	List<RestaurantNameRow> findNamesWithoutNormalizedName(@Param("afterId") Long afterId, Limit limit);
+
+	/**
+	 * @return if some restaurants still have no normalized name (see RestaurantNamesBackfill)
+	 */
+	boolean existsByNormalizedNameIsNullAndDeletedAtIsNull();
+
+	/**
+	 * @param normalizedName computed with {@link Restaurant#normalizeName(String)}, like for the restaurants saved since the column exists
+	 */
+	@Modifying
+	@Query("UPDATE restaurants r SET r.normalizedName = :normalizedName WHERE r.id = :id AND r.normalizedName IS NULL AND r.deletedAt IS NULL")
+	int setNormalizedName(@Param("id") Long id, @Param("normalizedName") String normalizedName);
+
+	@Query("SELECT new de.egastro.training.oidc.domain.persistence.RestaurantNameRow(r.id, r.authorizedParty, r.name) FROM restaurants r WHERE r.deletedAt IS NULL")
+	List<RestaurantNameRow> findAllNames();
+
+	/**
+	 * Reads the database, even if the restaurant is already in the persistence context
+	 */
+	@Query("SELECT r.menuVersion FROM restaurants r WHERE r.id = :id")
+	Long findMenuVersion(@Param("id") Long id);
+
+	/**
+	 * To call in the transactions changing the restaurant dishes. The increment is atomic: concurrent menu edits can't end with the same version.
+	 */
+	@Modifying(flushAutomatically = true)
+	@Query("UPDATE restaurants r SET r.menuVersion = r.menuVersion + 1 WHERE r.id = :id")
+	int incrementMenuVersion(@Param("id") Long id);
+
+	/**
+	 * Last step of the purge of a deleted restaurant, once all the rows referencing it are deleted
+	 */
+	@Modifying
+	@Query("DELETE FROM restaurants r WHERE r.id = :id AND r.deletedAt IS NOT NULL")
+	int deletePurged(@Param("id") Long id);
 }
@@ -0,0 +1,9 @@
+package de.egastro.training.oidc.domain.persistence;
+
+import de.egastro.training.oidc.domain.RestaurantGrant;
+
+/**
+ * Flat projection of a {@link de.egastro.training.oidc.domain.UserRestaurantGrant}: the pair needed to build grants DTOs, without hydrating entities
+ */
+public record UserGrantRow(Long restaurantId, RestaurantGrant grant) {
+}
@@ -1,13 +1,41 @@
 package de.egastro.training.oidc.domain.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import de.egastro.training.oidc.domain.UserRestaurantGrant;
 
 public interface UserRestaurantGrantRepository extends JpaRepository<UserRestaurantGrant, Long>, JpaSpecificationExecutor<UserRestaurantGrant> {
 
-	List<UserRestaurantGrant> findByUsername(String username);
+	/**
+	 * (restaurant, grant) pairs of a user, in a single statement served by the (username, restaurant_id, grant_label) unique index. Grants on restaurants
+	 * being purged are ignored.
+	 */
+	@Query("""
+			SELECT new de.egastro.training.oidc.domain.persistence.UserGrantRow(r.id, g.grant)
+			FROM UserRestaurantGrant g JOIN g.restaurant r
+			WHERE g.username = :username AND r.deletedAt IS NULL
+			ORDER BY r.id, g.grant""")
+	List<UserGrantRow> findGrantRowsByUsername(@Param("username") String username);
+
+	@Query("SELECT DISTINCT g.username FROM UserRestaurantGrant g WHERE g.restaurant.id = :restaurantId")
+	List<String> findUsernamesByRestaurantId(@Param("restaurantId") Long restaurantId);
+
+	/*--------------------------------------------------------------------------*/
+	/* Purge of a deleted restaurant: bounded batches of ids, then bulk deletes */
+	/*--------------------------------------------------------------------------*/
+
+	@Query("SELECT g.id FROM UserRestaurantGrant g WHERE g.restaurant.id = :restaurantId ORDER BY g.id")
+	List<Long> findIdsByRestaurantId(@Param("restaurantId") Long restaurantId, Limit limit);
+
+	@Modifying
+	@Query("DELETE FROM UserRestaurantGrant g WHERE g.id IN :grantIds")
+	int deleteByIdIn(@Param("grantIds") Collection<Long> grantIds);
 }
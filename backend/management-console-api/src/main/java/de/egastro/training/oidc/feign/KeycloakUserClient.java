@@ -3,6 +3,8 @@ package de.egastro.training.oidc.feign;
 import java.util.List;
 
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -29,7 +31,13 @@ public interface KeycloakUserClient {
 			@RequestParam("search") String search,
 			@RequestParam(name = "exact", required = false, defaultValue = "false") boolean exact);
 
+	/**
+	 * @return an empty response with the path to the created user in the Location header
+	 */
 	@PostMapping("/{realmName}/users")
-	void createUser(@PathVariable("realmName") String realmName, @RequestBody UserRepresentation user);
+	ResponseEntity<Void> createUser(@PathVariable("realmName") String realmName, @RequestBody UserRepresentation user);
+
+	@DeleteMapping("/{realmName}/users/{subject}")
+	void deleteUser(@PathVariable("realmName") String realmName, @PathVariable("subject") String subject);
 
 }
@@ -1,6 +1,7 @@
 package de.egastro.training.oidc.feign;
 
 import java.util.List;
+import java.util.Locale;
 
 import org.springframework.stereotype.Service;
 
@@ -29,13 +30,22 @@ public class KeycloakUserService {
 		return userClient.countUsers(realmName, search, exact);
 	}
 
+	/**
+	 * A single round trip: the subject of the created user is read from the Location header of the response (Keycloak stores the username and email in
+	 * lower case)
+	 */
 	public UserResponseDto createUser(String realmName, String name, String email) {
-		userClient.createUser(realmName, new UserRepresentation(null, name, email, List.of()));
-		final var realmUsers = userClient.getUsersLike(realmName, name, true);
-		if (realmUsers.size() == 0) {
+		final var location = userClient.createUser(realmName, new UserRepresentation(null, name, email, List.of())).getHeaders().getLocation();
+		if (location == null) {
 			throw new UserNotFoundException(realmName, name);
 		}
-		return toDto(realmName, realmUsers.get(0));
+		final var path = location.getPath();
+		final var subject = path.substring(path.lastIndexOf('/') + 1);
+		return toDto(realmName, new UserRepresentation(subject, name.toLowerCase(Locale.ROOT), email.toLowerCase(Locale.ROOT), List.of()));
+	}
+
+	public void deleteUser(String realmName, String subject) {
+		userClient.deleteUser(realmName, subject);
 	}
 
 	UserResponseDto toDto(String realmName, UserRepresentation keycloakObject) {
@@ -0,0 +1,68 @@
+package de.egastro.training.oidc.jobs;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.egastro.training.oidc.domain.persistence.ArchivedOrderRepository;
+import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
+import de.egastro.training.oidc.domain.persistence.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves orders picked for longer than the retention period, and their lines, from the orders tables to the archive tables. Each batch is a short
+ * transaction made of set-based statements: no entity is loaded.
+ */
+@Slf4j
+@Component
+public class OrdersArchiver {
+	private final OrderRepository orderRepo;
+	private final ArchivedOrderRepository archivedOrderRepo;
+	private final TransactionTemplate transaction;
+	private final Duration retention;
+	private final int batchSize;
+
+	public OrdersArchiver(
+			OrderRepository orderRepo,
+			ArchivedOrderRepository archivedOrderRepo,
+			PlatformTransactionManager transactionManager,
+			@Value("${orders-archive.retention:P30D}") Duration retention,
+			@Value("${orders-archive.batch-size:500}") int batchSize) {
+		this.orderRepo = orderRepo;
+		this.archivedOrderRepo = archivedOrderRepo;
+		this.transaction = new TransactionTemplate(transactionManager);
+		this.retention = retention;
+		this.batchSize = batchSize;
+	}
+
+	@Scheduled(cron = "${orders-archive.cron:0 0 3 * * *}")
+	public void archivePickedOrders() {
+		final var now = Instant.now();
+		final var pickedBefore = now.minus(retention);
+		var total = 0L;
+		int archived;
+		do {
+			archived = transaction.execute(status -> archiveBatch(pickedBefore, now));
+			total += archived;
+		} while (archived == batchSize);
+		log.info("Archived {} orders picked before {}", total, pickedBefore);
+	}
+
+	private int archiveBatch(Instant pickedBefore, Instant archivedAt) {
+		final var ids = orderRepo.findIdsPickedBefore(pickedBefore, Limit.of(batchSize));
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		archivedOrderRepo.copyOrders(ids, InstantEpochSecondConverter.toEpochSechond(archivedAt));
+		archivedOrderRepo.copyOrderLines(ids);
+		orderRepo.deleteLinesByOrderIdIn(ids);
+		orderRepo.deleteByIdIn(ids);
+		return ids.size();
+	}
+}
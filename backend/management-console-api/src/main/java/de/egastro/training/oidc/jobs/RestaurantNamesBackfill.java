@@ -0,0 +1,128 @@
+package de.egastro.training.oidc.jobs;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.RestaurantNameRow;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Migrates, at startup and before the web server accepts requests, the restaurants created before names were unique per authorized party regardless of
+ * case:
+ * <ul>
+ * <li>sets the normalized name of the rows created before that column existed, with the same {@link Restaurant#normalizeName(String)} as the
+ * restaurants saved since (SQL LOWER does not case-fold like Java for all characters and database collations)</li>
+ * <li>then drops the former (authorized_party, name) unique constraint, which schema updates keep. It would prevent from re-using the name of a deleted
+ * restaurant until its purge ends. It is kept as long as some rows have no normalized name: the new unique index ignores these rows, and the former
+ * constraint is then all that prevents from creating duplicates of their names</li>
+ * </ul>
+ * A no-op once all the rows are set and the constraint is dropped.
+ */
+@Slf4j
+@Component
+public class RestaurantNamesBackfill implements SmartInitializingSingleton {
+	private static final int BATCH_SIZE = 500;
+	private static final Set<String> LEGACY_CONSTRAINT_COLUMNS = Set.of("authorized_party", "name");
+	private static final String FIND_UNIQUE_CONSTRAINTS = """
+			SELECT tc.constraint_name, k.column_name
+			FROM information_schema.table_constraints tc
+			JOIN information_schema.key_column_usage k
+				ON k.constraint_schema = tc.constraint_schema AND k.constraint_name = tc.constraint_name AND k.table_name = tc.table_name
+			WHERE tc.constraint_type = 'UNIQUE' AND LOWER(tc.table_name) = 'restaurants' AND LOWER(tc.table_schema) = LOWER(?)""";
+
+	private final RestaurantRepository restaurantRepo;
+	private final TransactionTemplate transaction;
+	private final JdbcTemplate jdbc;
+
+	public RestaurantNamesBackfill(RestaurantRepository restaurantRepo, PlatformTransactionManager transactionManager, DataSource dataSource) {
+		this.restaurantRepo = restaurantRepo;
+		this.transaction = new TransactionTemplate(transactionManager);
+		this.jdbc = new JdbcTemplate(dataSource);
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		backfillNormalizedNames();
+		if (restaurantRepo.existsByNormalizedNameIsNullAndDeletedAtIsNull()) {
+			log.warn("Some restaurants have no normalized name yet: the former unique constraint on restaurants (authorized_party, name) is kept");
+			return;
+		}
+		dropLegacyNameConstraint();
+	}
+
+	/**
+	 * Drops the unique constraints on exactly (authorized_party, name), found in the standard information schema (H2, PostgreSQL and MySQL 8.0.19+
+	 * for the ALTER TABLE syntax). If that fails, the constraint should be dropped manually.
+	 */
+	void dropLegacyNameConstraint() {
+		try {
+			// MySQL drivers expose databases as catalogs
+			final var schema = jdbc.execute((ConnectionCallback<String>) connection -> {
+				final var current = connection.getSchema();
+				return current == null ? connection.getCatalog() : current;
+			});
+			final Map<String, Set<String>> columnsByConstraint = new HashMap<>();
+			jdbc.query(FIND_UNIQUE_CONSTRAINTS, rs -> {
+				columnsByConstraint
+						.computeIfAbsent(rs.getString(1), name -> new TreeSet<>())
+						.add(rs.getString(2).toLowerCase(Locale.ROOT));
+			}, schema);
+			columnsByConstraint.forEach((constraint, columns) -> {
+				if (LEGACY_CONSTRAINT_COLUMNS.equals(columns)) {
+					// the name comes from the database metadata, not from user input
+					jdbc.execute("ALTER TABLE restaurants DROP CONSTRAINT %s".formatted(constraint));
+					log.info("Dropped the former unique constraint {} on restaurants (authorized_party, name)", constraint);
+				}
+			});
+		} catch (DataAccessException e) {
+			log.error("Could not drop the former unique constraint on restaurants (authorized_party, name): drop it manually", e);
+		}
+	}
+
+	/**
+	 * One transaction per restaurant, for a name conflicting with another in the same authorized party (names differing only by case) not to block
+	 * the others. The conflicting rows keep a null normalized name (and are retried at next startup) until renamed.
+	 */
+	void backfillNormalizedNames() {
+		var count = 0;
+		var afterId = 0L;
+		List<RestaurantNameRow> rows;
+		do {
+			rows = restaurantRepo.findNamesWithoutNormalizedName(afterId, Limit.of(BATCH_SIZE));
+			for (final var row : rows) {
+				try {
+					count += transaction.execute(status -> restaurantRepo.setNormalizedName(row.id(), Restaurant.normalizeName(row.name())));
+				} catch (DataIntegrityViolationException e) {
+					log
+							.error(
+									"Restaurant {} name \"{}\" differs only by case from another one in {}: rename it for its normalized name to be set",
+									row.id(),
+									row.name(),
+									row.authorizedParty());
+				}
+				afterId = row.id();
+			}
+		} while (rows.size() == BATCH_SIZE);
+		if (count > 0) {
+			log.info("Set the normalized name of {} restaurants", count);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package de.egastro.training.oidc.jobs;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.RestaurantPurge;
+import de.egastro.training.oidc.domain.persistence.ArchivedOrderRepository;
+import de.egastro.training.oidc.domain.persistence.DishRepository;
+import de.egastro.training.oidc.domain.persistence.OrderRepository;
+import de.egastro.training.oidc.domain.persistence.OrderStatsRepository;
+import de.egastro.training.oidc.domain.persistence.RestaurantPurgeRepository;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import de.egastro.training.oidc.domain.persistence.UserRestaurantGrantRepository;
+import de.egastro.training.oidc.dtos.restaurants.RestaurantPurgeStatus;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deletes restaurants in the background. A deleted restaurant is first marked as such, which hides it, and its data is then removed by short transactions
+ * of set-based statements (no entity is loaded): grants, orders with their lines, archived orders with their lines, dishes, statistics and finally the
+ * restaurant itself. The progress is recorded in a {@link RestaurantPurge}, and the purges which did not complete (service stopped or failure) are
+ * resumed at startup.
+ */
+@Slf4j
+@Component
+public class RestaurantsPurger {
+	private final RestaurantRepository restaurantRepo;
+	private final RestaurantPurgeRepository purgeRepo;
+	private final UserRestaurantGrantRepository grantRepo;
+	private final OrderRepository orderRepo;
+	private final ArchivedOrderRepository archivedOrderRepo;
+	private final DishRepository dishRepo;
+	private final OrderStatsRepository orderStatsRepo;
+	private final TaskExecutor executor;
+	private final TransactionTemplate transaction;
+	private final int batchSize;
+
+	public RestaurantsPurger(
+			RestaurantRepository restaurantRepo,
+			RestaurantPurgeRepository purgeRepo,
+			UserRestaurantGrantRepository grantRepo,
+			OrderRepository orderRepo,
+			ArchivedOrderRepository archivedOrderRepo,
+			DishRepository dishRepo,
+			OrderStatsRepository orderStatsRepo,
+			@Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor executor,
+			PlatformTransactionManager transactionManager,
+			@Value("${restaurants-purge.batch-size:500}") int batchSize) {
+		this.restaurantRepo = restaurantRepo;
+		this.purgeRepo = purgeRepo;
+		this.grantRepo = grantRepo;
+		this.orderRepo = orderRepo;
+		this.archivedOrderRepo = archivedOrderRepo;
+		this.dishRepo = dishRepo;
+		this.orderStatsRepo = orderStatsRepo;
+		this.executor = executor;
+		this.transaction = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Marks the restaurant as deleted. The purge is started once the current transaction is committed.
+	 */
+	@Transactional(propagation = Propagation.MANDATORY)
+	public RestaurantPurge start(Restaurant restaurant) {
+		final var now = Instant.now();
+		restaurant.markDeleted(now);
+		restaurantRepo.save(restaurant);
+		final var purge = purgeRepo.save(new RestaurantPurge(restaurant, now));
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				submit(purge.getId());
+			}
+		});
+		return purge;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeUnfinished() {
+		final var unfinished = purgeRepo.findByStatusIn(List.of(RestaurantPurgeStatus.PENDING, RestaurantPurgeStatus.RUNNING, RestaurantPurgeStatus.FAILED));
+		unfinished.forEach(purge -> submit(purge.getId()));
+		if (!unfinished.isEmpty()) {
+			log.info("Resumed {} restaurant purges", unfinished.size());
+		}
+	}
+
+	private void submit(Long purgeId) {
+		executor.execute(() -> purge(purgeId));
+	}
+
+	void purge(Long purgeId) {
+		final var restaurantId = transaction.execute(status -> {
+			final var purge = purgeRepo.findById(purgeId).orElseThrow();
+			purge.setStatus(RestaurantPurgeStatus.RUNNING);
+			purge.setError(null);
+			return purge.getRestaurantId();
+		});
+		try {
+			deleteInBatches(purgeId, () -> grantRepo.findIdsByRestaurantId(restaurantId, Limit.of(batchSize)), (purge, ids) -> {
+				purge.setDeletedGrants(purge.getDeletedGrants() + grantRepo.deleteByIdIn(ids));
+			});
+			deleteInBatches(purgeId, () -> orderRepo.findIdsByRestaurantId(restaurantId, Limit.of(batchSize)), (purge, ids) -> {
+				purge.setDeletedOrderLines(purge.getDeletedOrderLines() + orderRepo.deleteLinesByOrderIdIn(ids));
+				purge.setDeletedOrders(purge.getDeletedOrders() + orderRepo.deleteByIdIn(ids));
+			});
+			// after the hot orders: the archival job might move some of them while the previous step runs
+			deleteInBatches(purgeId, () -> archivedOrderRepo.findIdsByRestaurantId(restaurantId, Limit.of(batchSize)), (purge, ids) -> {
+				purge.setDeletedArchivedOrderLines(purge.getDeletedArchivedOrderLines() + archivedOrderRepo.deleteLinesByOrderIdIn(ids));
+				purge.setDeletedArchivedOrders(purge.getDeletedArchivedOrders() + archivedOrderRepo.deleteByIdIn(ids));
+			});
+			deleteInBatches(purgeId, () -> dishRepo.findIdsByRestaurantId(restaurantId, Limit.of(batchSize)), (purge, ids) -> {
+				purge.setDeletedDishes(purge.getDeletedDishes() + dishRepo.deleteByIdIn(ids));
+			});
+			transaction.executeWithoutResult(status -> {
+				orderStatsRepo.deleteByRestaurantId(restaurantId);
+				restaurantRepo.deletePurged(restaurantId);
+				final var purge = purgeRepo.findById(purgeId).orElseThrow();
+				purge.setStatus(RestaurantPurgeStatus.DONE);
+				purge.setEndedAt(Instant.now());
+			});
+			log.info("Purged restaurant {}", restaurantId);
+		} catch (RuntimeException e) {
+			log.error("Failed to purge restaurant {}", restaurantId, e);
+			transaction.executeWithoutResult(status -> {
+				final var purge = purgeRepo.findById(purgeId).orElseThrow();
+				purge.setStatus(RestaurantPurgeStatus.FAILED);
+				purge.setError(abbreviate(e.getMessage()));
+			});
+		}
+	}
+
+	/**
+	 * Runs a transaction per batch of ids, until there is none left
+	 */
+	private void deleteInBatches(Long purgeId, Supplier<List<Long>> nextBatch, BatchDeletion deletion) {
+		int deleted;
+		do {
+			deleted = transaction.execute(status -> {
+				final var ids = nextBatch.get();
+				if (ids.isEmpty()) {
+					return 0;
+				}
+				deletion.delete(purgeRepo.findById(purgeId).orElseThrow(), ids);
+				return ids.size();
+			});
+		} while (deleted == batchSize);
+	}
+
+	private static String abbreviate(String message) {
+		if (message == null || message.length() <= RestaurantPurge.MAX_ERROR_LENGTH) {
+			return message;
+		}
+		return message.substring(0, RestaurantPurge.MAX_ERROR_LENGTH);
+	}
+
+	@FunctionalInterface
+	private static interface BatchDeletion {
+		/**
+		 * Deletes the rows of a batch and adds the counts to the purge progress
+		 */
+		void delete(RestaurantPurge purge, Collection<Long> ids);
+	}
+}
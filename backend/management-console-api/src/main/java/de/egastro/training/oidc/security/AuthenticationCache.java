@@ -0,0 +1,160 @@
+package de.egastro.training.oidc.security;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+
+/**
+ * {@link EGastroAuthentication} instances built from access tokens, per token: clients (kitchen screens for instance) send the same token with many
+ * requests, and the claims, authorities and grants are then parsed only once.
+ * <p>
+ * Only tokens which passed the JWT decoder validation are cached, until they expire. The cached instances are never returned: each request gets a new
+ * authentication sharing their parsed (and immutable) state, so that the details set by a request (remote address) are never seen by the others.
+ * <p>
+ * Lookups take no lock, for requests not to contend on the cache. About authentication-cache.max-size tokens are kept: once it is exceeded, a single
+ * thread evicts the least recently used tenth of the entries. The token strings are the keys: they are already retained by the authentications, and
+ * unlike digests, can't collide. Hits, misses, evictions and size are published as the standard cache meters (cache.gets, cache.evictions and
+ * cache.size, tagged with cache=authentications), and the memory retained by the tokens as cache.tokens.size (the parsed claims are of the same order
+ * of magnitude).
+ */
+@Component
+public class AuthenticationCache {
+	static final String CACHE_NAME = "authentications";
+
+	private final int maxSize;
+	/**
+	 * Entries count once an eviction is done: evictions are batched, not to sort the entries on each miss once the cache is full
+	 */
+	private final int sizeAfterEviction;
+	private final Counter hits;
+	private final Counter misses;
+	private final Counter evictions;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * Sum of the lengths of the cached tokens (which are ASCII: one byte per char)
+	 */
+	private final AtomicLong tokensSize = new AtomicLong();
+
+	public AuthenticationCache(MeterRegistry meterRegistry, @Value("${authentication-cache.max-size:10000}") int maxSize) {
+		this.maxSize = maxSize;
+		this.sizeAfterEviction = maxSize - maxSize / 10;
+		this.hits = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit").register(meterRegistry);
+		this.misses = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss").register(meterRegistry);
+		this.evictions = Counter.builder("cache.evictions").tag("cache", CACHE_NAME).register(meterRegistry);
+		Gauge.builder("cache.size", this, AuthenticationCache::size).tag("cache", CACHE_NAME).register(meterRegistry);
+		Gauge.builder("cache.tokens.size", this, AuthenticationCache::tokensSize).tag("cache", CACHE_NAME).baseUnit(BaseUnits.BYTES).register(meterRegistry);
+	}
+
+	/**
+	 * @param  jwt     a validated token
+	 * @param  factory called on cache misses, outside of any lock
+	 * @return         a new instance, for the current request only
+	 */
+	public EGastroAuthentication get(Jwt jwt, Supplier<EGastroAuthentication> factory) {
+		final var token = jwt.getTokenValue();
+		final var now = Instant.now();
+		final var entry = entries.get(token);
+		if (entry != null && entry.expiresAt.isAfter(now)) {
+			entry.lastAccess = System.nanoTime();
+			hits.increment();
+			return new EGastroAuthentication(entry.authentication);
+		}
+		misses.increment();
+		final var authentication = factory.get();
+		if (jwt.getExpiresAt() != null && jwt.getExpiresAt().isAfter(now)) {
+			if (entries.put(token, new Entry(authentication, jwt.getExpiresAt())) == null) {
+				tokensSize.addAndGet(token.length());
+			}
+			if (entries.size() > maxSize) {
+				evictLeastRecentlyUsed();
+			}
+			return new EGastroAuthentication(authentication);
+		}
+		return authentication;
+	}
+
+	@Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+	public void evictExpired() {
+		final var now = Instant.now();
+		entries.forEach((token, entry) -> {
+			if (!entry.expiresAt.isAfter(now)) {
+				remove(token, entry);
+			}
+		});
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	long tokensSize() {
+		return tokensSize.get();
+	}
+
+	/**
+	 * Skipped if another thread is already evicting
+	 */
+	private void evictLeastRecentlyUsed() {
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			final var excess = entries.size() - sizeAfterEviction;
+			if (excess <= 0) {
+				return;
+			}
+			entries
+					.entrySet()
+					.stream()
+					.sorted(Comparator.comparingLong(e -> e.getValue().lastAccess))
+					.limit(excess)
+					.toList()
+					.forEach(e -> {
+						if (remove(e.getKey(), e.getValue())) {
+							evictions.increment();
+						}
+					});
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private boolean remove(String token, Entry entry) {
+		if (entries.remove(token, entry)) {
+			tokensSize.addAndGet(-token.length());
+			return true;
+		}
+		return false;
+	}
+
+	private static class Entry {
+		private final EGastroAuthentication authentication;
+		private final Instant expiresAt;
+		/**
+		 * System nano time of the last hit (or of the creation)
+		 */
+		private volatile long lastAccess = System.nanoTime();
+
+		Entry(EGastroAuthentication authentication, Instant expiresAt) {
+			this.authentication = authentication;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
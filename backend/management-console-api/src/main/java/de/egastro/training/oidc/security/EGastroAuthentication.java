@@ -1,11 +1,9 @@
 package de.egastro.training.oidc.security;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.springframework.security.core.GrantedAuthority;
 
@@ -22,31 +20,47 @@ import de.egastro.training.oidc.domain.RestaurantGrant;
 public class EGastroAuthentication extends OAuthentication<OpenidClaimSet> {
 	private static final long serialVersionUID = -1325104147048800592L;
 
-	private final Map<Long, Set<RestaurantGrant>> grants;
+	public static final String GRANTS_CLAIM = "grantsByRestaurantId";
+	public static final String GRANT_MASKS_CLAIM = "grantMasksByRestaurantId";
 
+	private final RestaurantGrantMasks grants;
+	private final String realm;
+	private final List<String> roles;
+
+	/**
+	 * Grants are read from the compact grantMasksByRestaurantId claim (restaurant IDs to {@link RestaurantGrant#mask() grant masks}) if present, and from the
+	 * legacy grantsByRestaurantId one (restaurant IDs to grant names) otherwise.
+	 */
 	public EGastroAuthentication(OpenidClaimSet claims, Collection<? extends GrantedAuthority> authorities, String tokenString) {
 		super(claims, authorities, tokenString);
-		final Map<String, List<String>> grantStrings = this.getAttributes().containsKey("grantsByRestaurantId")
-				? this.getAttributes().getClaim("grantsByRestaurantId")
-				: Map.of();
-		this.grants = Collections
-				.unmodifiableMap(
-						grantStrings
-								.entrySet()
-								.stream()
-								.map(
-										e -> Map
-												.entry(
-														Long.valueOf(e.getKey()),
-														Collections
-																.unmodifiableSet(
-																		e.getValue().stream().map(RestaurantGrant::valueOf).collect(Collectors.toSet()))))
-								.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+		if (this.getAttributes().containsKey(GRANT_MASKS_CLAIM)) {
+			this.grants = RestaurantGrantMasks.fromMasksClaim(this.getAttributes().<Map<String, Number>>getClaim(GRANT_MASKS_CLAIM));
+		} else if (this.getAttributes().containsKey(GRANTS_CLAIM)) {
+			this.grants = RestaurantGrantMasks.fromNamesClaim(this.getAttributes().<Map<String, List<String>>>getClaim(GRANTS_CLAIM));
+		} else {
+			this.grants = RestaurantGrantMasks.EMPTY;
+		}
+		final var splits = this.getAttributes().getIssuer().toString().split("/");
+		this.realm = splits.length > 0 ? splits[splits.length - 1] : null;
+		this.roles = this.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList();
+	}
+
+	/**
+	 * A new authentication sharing the parsed claims, authorities and grants of another one (which are immutable), but not its mutable state (details)
+	 */
+	EGastroAuthentication(EGastroAuthentication parsed) {
+		super(parsed.getAttributes(), parsed.getAuthorities(), parsed.getTokenString());
+		this.grants = parsed.grants;
+		this.realm = parsed.realm;
+		this.roles = parsed.roles;
 	}
 
 	public String getRealm() {
-		final var splits = getAttributes().getIssuer().toString().split("/");
-		return splits.length > 0 ? splits[splits.length - 1] : null;
+		return realm;
+	}
+
+	public List<String> getRoles() {
+		return roles;
 	}
 
 	public String getAuthorizedParty() {
@@ -54,10 +68,21 @@ public class EGastroAuthentication extends OAuthentication<OpenidClaimSet> {
 	}
 
 	public Map<Long, Set<RestaurantGrant>> getGrantsByRestaurantId() {
-		return grants;
+		return grants.toGrants();
 	}
 
 	public Set<RestaurantGrant> getGrantsFor(Long restaurantId) {
-		return grants.getOrDefault(restaurantId, Set.of());
+		return RestaurantGrant.fromMask(getGrantMaskFor(restaurantId));
+	}
+
+	/**
+	 * @return the {@link RestaurantGrant#mask() mask} of the grants on the restaurant, 0 if none
+	 */
+	public int getGrantMaskFor(Long restaurantId) {
+		return restaurantId == null ? 0 : grants.get(restaurantId);
+	}
+
+	public boolean isGrantedWith(Long restaurantId, RestaurantGrant grant) {
+		return (getGrantMaskFor(restaurantId) & grant.mask()) != 0;
 	}
 }
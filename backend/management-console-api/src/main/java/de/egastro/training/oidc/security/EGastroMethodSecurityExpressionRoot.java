@@ -1,7 +1,6 @@
 package de.egastro.training.oidc.security;
 
 import java.util.Objects;
-import java.util.Set;
 
 import com.c4_soft.springaddons.security.oidc.spring.SpringAddonsMethodSecurityExpressionRoot;
 
@@ -26,7 +25,7 @@ final class EGastroMethodSecurityExpressionRoot extends SpringAddonsMethodSecuri
 
 	public boolean worksFor(Long restaurantId) {
 		if (getAuthentication() instanceof EGastroAuthentication egauth) {
-			return egauth.getGrantsFor(restaurantId).size() > 0;
+			return egauth.getGrantMaskFor(restaurantId) != 0;
 		}
 		return false;
 	}
@@ -37,7 +36,7 @@ final class EGastroMethodSecurityExpressionRoot extends SpringAddonsMethodSecuri
 
 	public RestaurantPermissions on(Long restaurantId) {
 		if (getAuthentication() instanceof EGastroAuthentication egauth) {
-			return new RestaurantPermissions(egauth.getGrantsFor(restaurantId));
+			return new RestaurantPermissions(egauth.getGrantMaskFor(restaurantId));
 		}
 		return RestaurantPermissions.EMPTY;
 	}
@@ -61,16 +60,19 @@ final class EGastroMethodSecurityExpressionRoot extends SpringAddonsMethodSecuri
 	}
 
 	public static class RestaurantPermissions {
-		private static final RestaurantPermissions EMPTY = new RestaurantPermissions(Set.of());
+		private static final RestaurantPermissions EMPTY = new RestaurantPermissions(0);
 
-		private final Set<RestaurantGrant> grants;
+		private final int grants;
 
-		public RestaurantPermissions(Set<RestaurantGrant> grants) {
+		/**
+		 * @param grants {@link RestaurantGrant#mask() mask} of the grants on the restaurant
+		 */
+		public RestaurantPermissions(int grants) {
 			this.grants = grants;
 		}
 
 		public boolean isGrantedWith(String grant) {
-			return grants.contains(RestaurantGrant.valueOf(grant));
+			return (grants & RestaurantGrant.valueOf(grant).mask()) != 0;
 		}
 	}
-}
\ No newline at end of file
+}
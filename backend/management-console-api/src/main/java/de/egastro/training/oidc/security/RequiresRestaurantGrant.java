@@ -0,0 +1,28 @@
+package de.egastro.training.oidc.security;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import de.egastro.training.oidc.domain.RestaurantGrant;
+
+/**
+ * Typed equivalent of {@code @PreAuthorize("on(#param).isGrantedWith('GRANT')")}: the current user must have the grant on the restaurant passed as the
+ * named parameter (either a {@link de.egastro.training.oidc.domain.Restaurant Restaurant} or its ID).
+ *
+ * @see RestaurantGrantAuthorizationManager
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequiresRestaurantGrant {
+
+	/**
+	 * Name of the method parameter holding the restaurant or its ID
+	 */
+	String param();
+
+	RestaurantGrant grant();
+}
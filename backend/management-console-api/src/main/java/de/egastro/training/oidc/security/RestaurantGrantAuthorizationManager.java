@@ -0,0 +1,97 @@
+package de.egastro.training.oidc.security;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.RestaurantGrant;
+
+/**
+ * Authorizes the invocations of {@link RequiresRestaurantGrant} methods without evaluating expressions: the position and type of the restaurant parameter
+ * are resolved when the methods are matched by the {@link #pointcut() pointcut}, that is when the beans are proxied at startup (an annotation referencing
+ * an unknown parameter, or one which is neither a restaurant nor an ID, fails the startup). An invocation check is then an argument read and a bit test.
+ */
+final class RestaurantGrantAuthorizationManager implements AuthorizationManager<MethodInvocation> {
+	private static final ParameterNameDiscoverer PARAMETER_NAMES = new DefaultParameterNameDiscoverer();
+
+	private final Map<Method, Check> checks = new ConcurrentHashMap<>();
+
+	Pointcut pointcut() {
+		return new StaticMethodMatcherPointcut() {
+			@Override
+			public boolean matches(Method method, Class<?> targetClass) {
+				return checkFor(AopUtils.getMostSpecificMethod(method, targetClass)) != null;
+			}
+		};
+	}
+
+	@Override
+	public AuthorizationDecision check(Supplier<Authentication> authentication, MethodInvocation invocation) {
+		final var check = checkFor(invocation.getMethod());
+		if (check == null) {
+			return null;
+		}
+		final var restaurantId = check.restaurantId(invocation.getArguments());
+		final var isGranted = restaurantId != null
+				&& authentication.get() instanceof EGastroAuthentication egauth
+				&& egauth.isGrantedWith(restaurantId, check.grant);
+		return new AuthorizationDecision(isGranted);
+	}
+
+	private Check checkFor(Method method) {
+		final var check = checks.get(method);
+		if (check != null) {
+			return check == Check.NONE ? null : check;
+		}
+		final var resolved = resolve(method);
+		checks.putIfAbsent(method, resolved);
+		return resolved == Check.NONE ? null : resolved;
+	}
+
+	private static Check resolve(Method method) {
+		final var annotation = AnnotatedElementUtils.findMergedAnnotation(method, RequiresRestaurantGrant.class);
+		if (annotation == null) {
+			return Check.NONE;
+		}
+		final var names = PARAMETER_NAMES.getParameterNames(method);
+		for (var i = 0; names != null && i < names.length; ++i) {
+			if (names[i].equals(annotation.param())) {
+				final var type = method.getParameterTypes()[i];
+				if (!Restaurant.class.isAssignableFrom(type) && !Long.class.equals(type) && !long.class.equals(type)) {
+					throw new IllegalStateException(
+							"@RequiresRestaurantGrant parameter %s of %s must be a Restaurant or a restaurant ID".formatted(annotation.param(), method));
+				}
+				return new Check(i, Restaurant.class.isAssignableFrom(type), annotation.grant());
+			}
+		}
+		throw new IllegalStateException("@RequiresRestaurantGrant parameter %s not found in %s".formatted(annotation.param(), method));
+	}
+
+	/**
+	 * @param parameterIndex position of the restaurant (or its ID) in the method arguments
+	 */
+	private static record Check(int parameterIndex, boolean isRestaurant, RestaurantGrant grant) {
+		static final Check NONE = new Check(-1, false, null);
+
+		Long restaurantId(Object[] arguments) {
+			final var argument = arguments[parameterIndex];
+			if (argument == null) {
+				return null;
+			}
+			return isRestaurant ? ((Restaurant) argument).getId() : (Long) argument;
+		}
+	}
+}
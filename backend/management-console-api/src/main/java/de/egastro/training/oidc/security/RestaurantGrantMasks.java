@@ -0,0 +1,82 @@
+package de.egastro.training.oidc.security;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import de.egastro.training.oidc.domain.RestaurantGrant;
+
+/**
+ * Immutable map of restaurant IDs to {@link RestaurantGrant#mask() grant masks}, stored in sorted primitive arrays (lookups are binary searches, with
+ * neither boxing nor hashing).
+ */
+final class RestaurantGrantMasks implements Serializable {
+	private static final long serialVersionUID = 4312596063453702918L;
+
+	static final RestaurantGrantMasks EMPTY = new RestaurantGrantMasks(new long[0], new int[0]);
+
+	private final long[] restaurantIds;
+	private final int[] masks;
+
+	private RestaurantGrantMasks(long[] restaurantIds, int[] masks) {
+		this.restaurantIds = restaurantIds;
+		this.masks = masks;
+	}
+
+	/**
+	 * @return the mask of the grants on the restaurant, 0 if none
+	 */
+	int get(long restaurantId) {
+		final var i = Arrays.binarySearch(restaurantIds, restaurantId);
+		return i < 0 ? 0 : masks[i];
+	}
+
+	Map<Long, Set<RestaurantGrant>> toGrants() {
+		final var grants = new TreeMap<Long, Set<RestaurantGrant>>();
+		for (var i = 0; i < restaurantIds.length; ++i) {
+			grants.put(restaurantIds[i], RestaurantGrant.fromMask(masks[i]));
+		}
+		return grants;
+	}
+
+	/**
+	 * @param claim compact format: restaurant IDs (as strings) to grant masks
+	 */
+	static RestaurantGrantMasks fromMasksClaim(Map<String, ? extends Number> claim) {
+		final var sorted = new TreeMap<Long, Integer>();
+		claim.forEach((restaurantId, mask) -> sorted.merge(Long.valueOf(restaurantId), mask.intValue(), (a, b) -> a | b));
+		return of(sorted);
+	}
+
+	/**
+	 * @param claim legacy format: restaurant IDs (as strings) to grant names
+	 */
+	static RestaurantGrantMasks fromNamesClaim(Map<String, ? extends Collection<String>> claim) {
+		final var sorted = new TreeMap<Long, Integer>();
+		claim.forEach((restaurantId, names) -> {
+			var mask = 0;
+			for (final var name : names) {
+				mask |= RestaurantGrant.valueOf(name).mask();
+			}
+			sorted.merge(Long.valueOf(restaurantId), mask, (a, b) -> a | b);
+		});
+		return of(sorted);
+	}
+
+	private static RestaurantGrantMasks of(TreeMap<Long, Integer> sorted) {
+		if (sorted.isEmpty()) {
+			return EMPTY;
+		}
+		final var restaurantIds = new long[sorted.size()];
+		final var masks = new int[sorted.size()];
+		var i = 0;
+		for (final var entry : sorted.entrySet()) {
+			restaurantIds[i] = entry.getKey();
+			masks[i++] = entry.getValue();
+		}
+		return new RestaurantGrantMasks(restaurantIds, masks);
+	}
+}
@@ -3,10 +3,15 @@ package de.egastro.training.oidc.security;
 import java.util.Collection;
 import java.util.Map;
 
+import org.springframework.aop.Advisor;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import org.springframework.security.authorization.method.AuthorizationInterceptorsOrder;
+import org.springframework.security.authorization.method.AuthorizationManagerBeforeMethodInterceptor;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.core.GrantedAuthority;
 
@@ -22,16 +27,29 @@ public class SecurityConfig {
 	@Bean
 	JwtAbstractAuthenticationTokenConverter authenticationFactory(
 			Converter<Map<String, Object>, Collection<? extends GrantedAuthority>> authoritiesConverter,
-			SpringAddonsOidcProperties addonsProperties) {
-		return jwt -> {
+			SpringAddonsOidcProperties addonsProperties,
+			AuthenticationCache authenticationCache) {
+		return jwt -> authenticationCache.get(jwt, () -> {
 			final var opProperties = addonsProperties.getOpProperties(jwt.getIssuer());
 			final var claims = new OpenidClaimSet(jwt.getClaims(), opProperties.getUsernameClaim());
 			return new EGastroAuthentication(claims, authoritiesConverter.convert(claims), jwt.getTokenValue());
-		};
+		});
 	}
 
 	@Bean
 	MethodSecurityExpressionHandler methodSecurityExpressionHandler() {
 		return new SpringAddonsMethodSecurityExpressionHandler(EGastroMethodSecurityExpressionRoot::new);
 	}
+
+	/**
+	 * {@link RequiresRestaurantGrant} checks, run with the same precedence as {@link org.springframework.security.access.prepost.PreAuthorize @PreAuthorize}
+	 */
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	static Advisor requiresRestaurantGrantAuthorizationInterceptor() {
+		final var authorizationManager = new RestaurantGrantAuthorizationManager();
+		final var interceptor = new AuthorizationManagerBeforeMethodInterceptor(authorizationManager.pointcut(), authorizationManager);
+		interceptor.setOrder(AuthorizationInterceptorsOrder.PRE_AUTHORIZE.getOrder());
+		return interceptor;
+	}
 }
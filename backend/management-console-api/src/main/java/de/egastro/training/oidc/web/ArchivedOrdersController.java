@@ -0,0 +1,119 @@
+package de.egastro.training.oidc.web;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import de.egastro.training.oidc.domain.ArchivedOrder;
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.RestaurantGrant;
+import de.egastro.training.oidc.domain.persistence.ArchivedOrderRepository;
+import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
+import de.egastro.training.oidc.domain.persistence.OrderLineRow;
+import de.egastro.training.oidc.dtos.ErrorDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderLineResponseDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderResponseDto;
+import de.egastro.training.oidc.dtos.restaurants.OrdersPageDto;
+import de.egastro.training.oidc.security.RequiresRestaurantGrant;
+import de.egastro.training.oidc.web.OrdersController.InvalidCursorException;
+import de.egastro.training.oidc.web.RestaurantsController.RestaurantNotFoundException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/authorized-parties/{authorizedParty}/restaurants/{restaurantId}/archived-orders")
+@RequiredArgsConstructor
+@Tag(name = "Orders")
+public class ArchivedOrdersController {
+
+	private final ArchivedOrderRepository archivedOrderRepo;
+
+	private static final int MAX_PAGE_SIZE = 200;
+
+	/*------------------*/
+	/* Public interface */
+	/*------------------*/
+
+	@GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+	@Transactional(readOnly = true)
+	@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.VIEW_ORDERS)
+	@Operation(
+			description = "History of the orders moved out of the orders table by the archival job, most recent first",
+			responses = {
+					@ApiResponse(description = "Ok"),
+					@ApiResponse(responseCode = "400", description = "Invalid cursor", content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(responseCode = "404", description = "Restaurant not found") })
+	public OrdersPageDto listArchivedOrders(
+			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
+			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			@RequestParam(name = "cursor", required = false) @Parameter(description = "nextCursor from previous page") String cursor,
+			@RequestParam(name = "size", required = false, defaultValue = "50") @Parameter(description = "page size, capped to 200") int size)
+			throws RestaurantNotFoundException,
+			InvalidCursorException {
+		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
+			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
+		}
+		final var pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		// fetch one more order than requested to know if there is a next page
+		final var limit = Limit.of(pageSize + 1);
+		final List<ArchivedOrder> orders;
+		if (StringUtils.hasText(cursor)) {
+			final var position = OrdersCursor.decode(cursor);
+			orders = archivedOrderRepo.findByRestaurantIdBefore(restaurant.getId(), position.passedAt(), position.id(), limit);
+		} else {
+			orders = archivedOrderRepo.findByRestaurantIdOrderByPassedAtDescIdDesc(restaurant.getId(), limit);
+		}
+		final var page = orders.size() > pageSize ? orders.subList(0, pageSize) : orders;
+		final var last = page.isEmpty() ? null : page.get(page.size() - 1);
+		final var nextCursor = orders.size() > pageSize ? new OrdersCursor(last.getPassedAt(), last.getId()).encode() : null;
+		return new OrdersPageDto(toDtos(page), nextCursor);
+	}
+
+	/*-----------*/
+	/* Internals */
+	/*-----------*/
+
+	private List<OrderResponseDto> toDtos(List<ArchivedOrder> orders) {
+		if (orders.isEmpty()) {
+			return List.of();
+		}
+		final var linesByOrderId = archivedOrderRepo
+				.findLineRowsByOrderIdIn(orders.stream().map(ArchivedOrder::getId).toList())
+				.stream()
+				.collect(Collectors.groupingBy(OrderLineRow::orderId, Collectors.mapping(OrdersController::toDto, Collectors.toList())));
+		return orders.stream().map(order -> toDto(order, linesByOrderId.getOrDefault(order.getId(), List.of()))).toList();
+	}
+
+	/*------*/
+	/* DTOs */
+	/*------*/
+
+	static OrderResponseDto toDto(ArchivedOrder order, List<OrderLineResponseDto> lines) {
+		return new OrderResponseDto(
+				order.getId(),
+				order.getCustomerName(),
+				lines,
+				order.getPassedAt().getEpochSecond(),
+				order.getAskedFor().getEpochSecond(),
+				InstantEpochSecondConverter.toEpochSechond(order.getEngagedFor()),
+				InstantEpochSecondConverter.toEpochSechond(order.getReadyAt()),
+				InstantEpochSecondConverter.toEpochSechond(order.getPickedAt()),
+				order.getVersion());
+	}
+}
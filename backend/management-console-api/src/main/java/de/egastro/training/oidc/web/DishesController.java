@@ -1,9 +1,18 @@
 package de.egastro.training.oidc.web;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -19,33 +28,58 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import de.egastro.training.oidc.domain.Dish;
 import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.RestaurantGrant;
 import de.egastro.training.oidc.domain.persistence.DishRepository;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
 import de.egastro.training.oidc.dtos.ErrorDto;
+import de.egastro.training.oidc.dtos.restaurants.DishConflictDto;
 import de.egastro.training.oidc.dtos.restaurants.DishResponseDto;
 import de.egastro.training.oidc.dtos.restaurants.DishUpdateDto;
+import de.egastro.training.oidc.dtos.restaurants.MenuReplacementResultDto;
+import de.egastro.training.oidc.security.RequiresRestaurantGrant;
 import de.egastro.training.oidc.web.RestaurantsController.RestaurantNotFoundException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
-import lombok.RequiredArgsConstructor;
 
 @RestController
 @RequestMapping("/realms/{authorizedParty}/restaurants/{restaurantId}/dishes")
-@RequiredArgsConstructor
 @Tag(name = "Dishes")
 public class DishesController {
 
 	private final DishRepository dishRepo;
+	private final RestaurantRepository restaurantRepo;
+	private final MenuCache menuCache;
+	private final Validator validator;
+	private final CacheControl menuCacheControl;
+
+	private static final int MAX_MENU_SIZE = 1000;
+
+	public DishesController(
+			DishRepository dishRepo,
+			RestaurantRepository restaurantRepo,
+			MenuCache menuCache,
+			Validator validator,
+			@Value("${menus.cache-max-age:PT1M}") Duration menuCacheMaxAge) {
+		this.dishRepo = dishRepo;
+		this.restaurantRepo = restaurantRepo;
+		this.menuCache = menuCache;
+		this.validator = validator;
+		this.menuCacheControl = CacheControl.maxAge(menuCacheMaxAge).cachePublic().mustRevalidate();
+	}
 
 	/*------------------*/
 	/* Public interface */
@@ -54,20 +88,50 @@ public class DishesController {
 	@GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
 	@Transactional(readOnly = true)
 	@PreAuthorize("permitAll()")
-	@Operation(responses = { @ApiResponse(headers = @Header(name = HttpHeaders.LOCATION, description = "Path to the created dish")) })
-	public List<DishResponseDto> listDishes(
+	@Operation(
+			responses = {
+					@ApiResponse(
+							headers = {
+									@Header(name = HttpHeaders.ETAG, description = "Version of the menu (and encoding)"),
+									@Header(name = HttpHeaders.CACHE_CONTROL, description = "public, to revalidate with If-None-Match once stale") },
+							content = @Content(array = @ArraySchema(schema = @Schema(implementation = DishResponseDto.class)))),
+					@ApiResponse(responseCode = "304", description = "Menu unchanged since the version in If-None-Match") })
+	public ResponseEntity<byte[]> listDishes(
 			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
-			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant)
+			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			WebRequest request)
 			throws RestaurantNotFoundException {
 		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
 			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
 		}
-		return restaurant.getDishes().stream().map(DishesController::toDto).toList();
+		final var isGzip = menuCache.isGzipEnabled() && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+		final var etag = menuETag(restaurant, isGzip);
+		if (request.checkNotModified(etag)) {
+			// the version is read from the restaurant row: the dishes are not loaded
+			return ResponseEntity
+					.status(HttpStatus.NOT_MODIFIED)
+					.eTag(etag)
+					.cacheControl(menuCacheControl)
+					.varyBy(HttpHeaders.ACCEPT_ENCODING)
+					.build();
+		}
+		// the bytes serialized once per menu version are written as is
+		final var menu = menuCache.get(restaurant);
+		final var response = ResponseEntity
+				.ok()
+				.eTag(etag)
+				.cacheControl(menuCacheControl)
+				.varyBy(HttpHeaders.ACCEPT_ENCODING)
+				.contentType(MediaType.APPLICATION_JSON);
+		if (isGzip) {
+			return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(menu.gzip());
+		}
+		return response.body(menu.json());
 	}
 
 	@PostMapping(produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
 	@Transactional()
-	@PreAuthorize("on(#restaurant).isGrantedWith('EDIT_MENUS')")
+	@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.EDIT_MENUS)
 	@Operation(
 			responses = {
 					@ApiResponse(responseCode = "201", headers = @Header(name = HttpHeaders.LOCATION, description = "Path to the created dish")),
@@ -89,13 +153,115 @@ public class DishesController {
 		}
 		final var dish = new Dish(restaurant, dto.name(), dto.priceInCents());
 		restaurant.getDishes().add(dish);
-		final var saved = dishRepo.save(new Dish(restaurant, dto.name(), dto.priceInCents()));
+		final var saved = dishRepo.save(dish);
+		restaurantRepo.incrementMenuVersion(restaurant.getId());
+		menuCache.evict(restaurant.getId());
 		return ResponseEntity
 				.accepted()
 				.location(URI.create("/realms/%s/restaurants/%d/dishes/%d".formatted(authorizedParty, restaurant.getId(), saved.getId())))
 				.body(toDto(saved));
 	}
 
+	@PutMapping(produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+	@Transactional()
+	@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.EDIT_MENUS)
+	@Operation(
+			description = """
+					Replaces the whole menu. Dishes are matched by name: submitted dishes are created or have their price updated, and current dishes missing \
+					from the submitted menu are deleted. Nothing is changed if there is any conflict, and all conflicts are reported at once.""",
+			responses = {
+					@ApiResponse(description = "Menu replaced"),
+					@ApiResponse(
+							responseCode = "400",
+							description = "Too many dishes",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(
+							responseCode = "404",
+							description = "Restaurant not found",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(
+							responseCode = "409",
+							description = "Invalid or duplicated dishes, names used by another restaurant, or ordered dishes missing from the submitted menu") })
+	public ResponseEntity<MenuReplacementResultDto> replaceMenu(
+			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
+			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			@RequestBody @NotNull List<DishUpdateDto> dtos)
+			throws RestaurantNotFoundException,
+			TooManyDishesException {
+		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
+			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
+		}
+		if (dtos.size() > MAX_MENU_SIZE) {
+			throw new TooManyDishesException(dtos.size());
+		}
+
+		final var conflicts = new ArrayList<DishConflictDto>();
+		final var submitted = new HashMap<String, DishUpdateDto>(dtos.size());
+		for (int i = 0; i < dtos.size(); ++i) {
+			final var dto = dtos.get(i);
+			final var violations = dto == null ? null : validator.validate(dto);
+			if (dto == null || !violations.isEmpty()) {
+				conflicts
+						.add(
+								new DishConflictDto(
+										i,
+										dto == null ? null : dto.name(),
+										dto == null ? "Invalid DishUpdateDto: null"
+												: "Invalid DishUpdateDto: %s"
+														.formatted(
+																violations
+																		.stream()
+																		.map(v -> "%s %s".formatted(v.getPropertyPath(), v.getMessage()))
+																		.collect(Collectors.joining(", ")))));
+			} else if (submitted.putIfAbsent(dto.name(), dto) != null) {
+				conflicts.add(new DishConflictDto(i, dto.name(), "Duplicated name in the submitted menu"));
+			}
+		}
+
+		// a single query for all the names
+		final var namesUsedElsewhere = submitted.isEmpty()
+				? List.<String>of()
+				: dishRepo.findNamesUsedByOtherRestaurants(submitted.keySet(), restaurant.getId());
+		if (!namesUsedElsewhere.isEmpty()) {
+			final var usedElsewhere = new HashSet<>(namesUsedElsewhere);
+			for (int i = 0; i < dtos.size(); ++i) {
+				final var dto = dtos.get(i);
+				if (dto != null && usedElsewhere.remove(dto.name())) {
+					conflicts.add(new DishConflictDto(i, dto.name(), "Name already used by another restaurant"));
+				}
+			}
+		}
+
+		final var current = restaurant.getDishes().stream().collect(Collectors.toMap(Dish::getName, Function.identity()));
+		final var removed = current.values().stream().filter(dish -> !submitted.containsKey(dish.getName())).toList();
+		// a single query for all the removed dishes
+		final var orderedIds = removed.isEmpty() ? List.<Long>of() : dishRepo.findOrderedDishIds(removed.stream().map(Dish::getId).toList());
+		removed
+				.stream()
+				.filter(dish -> orderedIds.contains(dish.getId()))
+				.forEach(dish -> conflicts.add(new DishConflictDto(null, dish.getName(), "Dish in orders, it can't be removed from the menu")));
+
+		if (!conflicts.isEmpty()) {
+			return ResponseEntity.status(HttpStatus.CONFLICT).body(new MenuReplacementResultDto(toDtos(restaurant.getDishes()), conflicts));
+		}
+
+		// the inserts, updates and deletes are batched when flushed (see hibernate.jdbc.batch_size)
+		restaurant.getDishes().removeAll(removed);
+		final var created = new ArrayList<Dish>();
+		for (final var dto : submitted.values()) {
+			final var dish = current.get(dto.name());
+			if (dish == null) {
+				created.add(new Dish(restaurant, dto.name(), dto.priceInCents()));
+			} else if (!Objects.equals(dish.getPriceInCents(), dto.priceInCents())) {
+				dish.setPriceInCents(dto.priceInCents());
+			}
+		}
+		restaurant.getDishes().addAll(dishRepo.saveAll(created));
+		restaurantRepo.incrementMenuVersion(restaurant.getId());
+		menuCache.evict(restaurant.getId());
+		return ResponseEntity.ok(new MenuReplacementResultDto(toDtos(restaurant.getDishes()), List.of()));
+	}
+
 	@GetMapping(path = "/{dishId}", produces = MediaType.APPLICATION_JSON_VALUE)
 	@Transactional(readOnly = true)
 	@PreAuthorize("permitAll()")
@@ -116,7 +282,7 @@ public class DishesController {
 
 	@PutMapping(path = "/{dishId}", consumes = MediaType.APPLICATION_JSON_VALUE)
 	@Transactional()
-	@PreAuthorize("on(#restaurantId).isGrantedWith('EDIT_MENUS')")
+	@RequiresRestaurantGrant(param = "restaurantId", grant = RestaurantGrant.EDIT_MENUS)
 	@Operation(
 			responses = {
 					@ApiResponse(responseCode = "201", headers = @Header(name = HttpHeaders.LOCATION, description = "Path to the updated dish")),
@@ -137,6 +303,8 @@ public class DishesController {
 		dish.setName(dto.name());
 		dish.setPriceInCents(dto.priceInCents());
 		final var saved = dishRepo.save(dish);
+		restaurantRepo.incrementMenuVersion(restaurantId);
+		menuCache.evict(restaurantId);
 		return ResponseEntity
 				.accepted()
 				.location(URI.create("/realms/%s/restaurants/%d/dishes/%d".formatted(authorizedParty, restaurantId, saved.getId())))
@@ -145,7 +313,7 @@ public class DishesController {
 
 	@DeleteMapping("/{dishId}")
 	@Transactional()
-	@PreAuthorize("on(#restaurantId).isGrantedWith('EDIT_MENUS')")
+	@RequiresRestaurantGrant(param = "restaurantId", grant = RestaurantGrant.EDIT_MENUS)
 	// @PreAuthorize("worksFor(#dish.restaurant)")
 	@Operation(
 			responses = {
@@ -161,12 +329,43 @@ public class DishesController {
 		}
 		dish.getRestaurant().getDishes().remove(dish);
 		dishRepo.delete(dish);
+		restaurantRepo.incrementMenuVersion(restaurantId);
+		menuCache.evict(restaurantId);
 		return ResponseEntity.accepted().build();
 	}
 
+	/*-----------*/
+	/* Internals */
+	/*-----------*/
+
+	/**
+	 * Strong ETag: the same menu version always has the same representation (dishes are sorted by ID), but the gzip one is a different representation
+	 */
+	static String menuETag(Restaurant restaurant, boolean isGzip) {
+		return "\"%d%s\"".formatted(restaurant.getMenuVersion(), isGzip ? "-gzip" : "");
+	}
+
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (final var coding : acceptEncoding.split(",")) {
+			final var parts = coding.split(";");
+			final var name = parts[0].trim();
+			if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+				return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
 	/*------*/
 	/* DTOs */
 	/*------*/
+	static List<DishResponseDto> toDtos(List<Dish> dishes) {
+		return dishes.stream().sorted(Comparator.comparing(Dish::getId)).map(DishesController::toDto).toList();
+	}
+
 	static DishResponseDto toDto(Dish dish) {
 		return new DishResponseDto(dish.getId(), dish.getName(), dish.getPriceInCents());
 	}
@@ -175,6 +374,15 @@ public class DishesController {
 	/* Exceptions */
 	/*------------*/
 
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	static class TooManyDishesException extends RuntimeException {
+		private static final long serialVersionUID = 2684178912325040236L;
+
+		public TooManyDishesException(int count) {
+			super("Too many dishes in a single menu: %d (max is %d)".formatted(count, MAX_MENU_SIZE));
+		}
+	}
+
 	@ResponseStatus(HttpStatus.NOT_FOUND)
 	static class DishNotFoundException extends RuntimeException {
 		private static final long serialVersionUID = -4122331808212443111L;
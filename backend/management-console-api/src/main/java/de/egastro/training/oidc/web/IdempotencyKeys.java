@@ -0,0 +1,295 @@
+package de.egastro.training.oidc.web;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.egastro.training.oidc.domain.persistence.IdempotencyKeyRepository;
+import de.egastro.training.oidc.dtos.restaurants.OrderResponseDto;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Responses of {@link OrdersController#createOrder} requests with an Idempotency-Key header, replayed when a client retries a request.
+ * <p>
+ * Keys are scoped to the user and the restaurant. The responses are kept in memory (at most orders-idempotency.max-keys of them, for
+ * orders-idempotency.ttl) and, when orders-idempotency.persistent is true, in the database too, so that retries landing on another instance or after a
+ * restart are replayed as well. A key is reserved for the duration of the first request transaction: a concurrent retry is rejected, and a failed request
+ * releases the key. Reservations are not counted in max-keys and never evicted: only completed requests are.
+ */
+@Slf4j
+@Component
+public class IdempotencyKeys {
+	public static final String HEADER = "Idempotency-Key";
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+	static final int MAX_KEY_LENGTH = 255;
+
+	private final IdempotencyKeyRepository idempotencyKeyRepo;
+	private final ObjectMapper objectMapper;
+	private final Duration ttl;
+	private final int maxKeys;
+	private final boolean isPersistent;
+
+	/**
+	 * Completed requests, mostly in insertion order: entries replayed from the database are added with their original creation time, so expiry is also
+	 * checked on lookup
+	 */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * Keys reserved by requests in progress, guarded by the entries lock
+	 */
+	private final Map<String, Entry> reservations = new HashMap<>();
+
+	public IdempotencyKeys(
+			IdempotencyKeyRepository idempotencyKeyRepo,
+			ObjectMapper objectMapper,
+			@Value("${orders-idempotency.ttl:PT24H}") Duration ttl,
+			@Value("${orders-idempotency.max-keys:100000}") int maxKeys,
+			@Value("${orders-idempotency.persistent:false}") boolean isPersistent) {
+		this.idempotencyKeyRepo = idempotencyKeyRepo;
+		this.objectMapper = objectMapper;
+		this.ttl = ttl;
+		this.maxKeys = maxKeys;
+		this.isPersistent = isPersistent;
+		this.entries = new LinkedHashMap<>() {
+			private static final long serialVersionUID = 6541264125245117711L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > IdempotencyKeys.this.maxKeys;
+			}
+		};
+	}
+
+	/**
+	 * To call at the beginning of the request transaction
+	 *
+	 * @return a retry, with the response to replay, if the key was already used for the same request. Otherwise, the key is reserved until the end of the
+	 *         transaction and the request should be {@link IdempotentRequest#complete(URI, OrderResponseDto) completed} once the order is created.
+	 * @throws IdempotencyKeyConflictException if the key is used by a request in progress or was used for another request
+	 */
+	@Transactional(propagation = Propagation.MANDATORY)
+	public IdempotentRequest begin(String key, String username, Long restaurantId, Object requestBody)
+			throws InvalidIdempotencyKeyException,
+			IdempotencyKeyConflictException {
+		if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+			throw new InvalidIdempotencyKeyException();
+		}
+		final var id = sha256("%s:%d:%s".formatted(username, restaurantId, key));
+		final var fingerprint = fingerprint(requestBody);
+		final var now = Instant.now();
+		synchronized (entries) {
+			evictExpired(now);
+			final var entry = find(id, now);
+			if (entry != null) {
+				return new IdempotentRequest(entry.replay(fingerprint));
+			}
+		}
+		if (isPersistent) {
+			final var stored = idempotencyKeyRepo.findById(id).filter(k -> k.getCreatedAt().isAfter(now.minus(ttl))).orElse(null);
+			if (stored != null) {
+				final var replay = new Replay(URI.create(stored.getLocation()), fromJson(stored.getResponseBody()));
+				final var entry = new Entry(stored.getFingerprint(), stored.getCreatedAt(), replay);
+				synchronized (entries) {
+					entries.putIfAbsent(id, entry);
+				}
+				return new IdempotentRequest(entry.replay(fingerprint));
+			}
+		}
+		synchronized (entries) {
+			final var concurrent = find(id, now);
+			if (concurrent != null) {
+				return new IdempotentRequest(concurrent.replay(fingerprint));
+			}
+			reservations.put(id, new Entry(fingerprint, now, null));
+		}
+		final var request = new IdempotentRequest(id, fingerprint, now);
+		TransactionSynchronizationManager.registerSynchronization(request);
+		return request;
+	}
+
+	@Scheduled(fixedDelay = 1, timeUnit = TimeUnit.HOURS)
+	@Transactional
+	public void purgeExpired() {
+		if (isPersistent) {
+			final var purged = idempotencyKeyRepo.deleteByCreatedAtBefore(Instant.now().minus(ttl));
+			log.debug("Purged {} expired idempotency keys", purged);
+		}
+	}
+
+	/**
+	 * @return the completed request which is not expired yet, or the reservation for the key, if any. To call with the entries lock.
+	 */
+	private Entry find(String id, Instant now) {
+		final var entry = entries.get(id);
+		if (entry != null && !entry.createdAt.isAfter(now.minus(ttl))) {
+			entries.remove(id);
+			return reservations.get(id);
+		}
+		return entry != null ? entry : reservations.get(id);
+	}
+
+	private void evictExpired(Instant now) {
+		final var iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().createdAt.isAfter(now.minus(ttl))) {
+				return;
+			}
+			iterator.remove();
+		}
+	}
+
+	private String fingerprint(Object requestBody) {
+		try {
+			return sha256(objectMapper.writeValueAsString(requestBody));
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private String toJson(OrderResponseDto response) {
+		try {
+			return objectMapper.writeValueAsString(response);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private OrderResponseDto fromJson(String response) {
+		try {
+			return objectMapper.readValue(response, OrderResponseDto.class);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String sha256(String value) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param location where the created order can be found
+	 * @param order    body of the original response
+	 */
+	public static record Replay(URI location, OrderResponseDto order) {
+	}
+
+	private static record Entry(String fingerprint, Instant createdAt, Replay replay) {
+
+		Replay replay(String requestFingerprint) throws IdempotencyKeyConflictException {
+			if (replay == null) {
+				throw new IdempotencyKeyConflictException("A request with the same Idempotency-Key is in progress");
+			}
+			if (!fingerprint.equals(requestFingerprint)) {
+				throw new IdempotencyKeyConflictException("The Idempotency-Key was already used for another request");
+			}
+			return replay;
+		}
+	}
+
+	/**
+	 * Either a retry of a completed request, or a first request holding the key until its transaction completes (the key is released if it rolls back)
+	 */
+	public class IdempotentRequest implements TransactionSynchronization {
+		private final String id;
+		private final String fingerprint;
+		private final Instant createdAt;
+		private final boolean isRetry;
+		private Replay replay;
+
+		private IdempotentRequest(Replay replay) {
+			this.id = null;
+			this.fingerprint = null;
+			this.createdAt = null;
+			this.isRetry = true;
+			this.replay = replay;
+		}
+
+		private IdempotentRequest(String id, String fingerprint, Instant createdAt) {
+			this.id = id;
+			this.fingerprint = fingerprint;
+			this.createdAt = createdAt;
+			this.isRetry = false;
+		}
+
+		/**
+		 * @return the response of the original request if this one is a retry
+		 */
+		public Optional<Replay> getReplay() {
+			return isRetry ? Optional.of(replay) : Optional.empty();
+		}
+
+		/**
+		 * To call in the request transaction, once the order is created
+		 */
+		public void complete(URI location, OrderResponseDto order) throws IdempotencyKeyConflictException {
+			if (isRetry) {
+				throw new IllegalStateException("A retry can't be completed");
+			}
+			this.replay = new Replay(location, order);
+			if (isPersistent) {
+				try {
+					idempotencyKeyRepo.deleteExpired(id, createdAt.minus(ttl));
+					idempotencyKeyRepo.insert(id, fingerprint, location.toString(), toJson(order), createdAt.getEpochSecond());
+				} catch (DataIntegrityViolationException e) {
+					throw new IdempotencyKeyConflictException("A request with the same Idempotency-Key is in progress");
+				}
+			}
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			synchronized (entries) {
+				reservations.remove(id);
+				if (status == STATUS_COMMITTED && replay != null) {
+					entries.put(id, new Entry(fingerprint, createdAt, replay));
+				}
+			}
+		}
+	}
+
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	static class InvalidIdempotencyKeyException extends RuntimeException {
+		private static final long serialVersionUID = 2196283212419366405L;
+
+		public InvalidIdempotencyKeyException() {
+			super("Idempotency-Key must not be blank nor longer than %d characters".formatted(MAX_KEY_LENGTH));
+		}
+	}
+
+	@ResponseStatus(HttpStatus.CONFLICT)
+	static class IdempotencyKeyConflictException extends RuntimeException {
+		private static final long serialVersionUID = -3113393786733426593L;
+
+		public IdempotencyKeyConflictException(String message) {
+			super(message);
+		}
+	}
+}
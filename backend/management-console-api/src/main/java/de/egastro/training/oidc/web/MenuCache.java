@@ -0,0 +1,85 @@
+package de.egastro.training.oidc.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+
+/**
+ * Restaurants menus serialized to JSON (and gzip) once per {@link Restaurant#getMenuVersion() menu version}, so that {@link DishesController#listDishes}
+ * writes the same bytes to all the responses.
+ * <p>
+ * Entries are tagged with the menu version they were built from and a request for another version rebuilds the entry: a stale menu is never served,
+ * even when a dish changed on another instance. Dish writes also evict the restaurant entry.
+ */
+@Component
+public class MenuCache {
+	private final RestaurantRepository restaurantRepo;
+	private final ObjectMapper objectMapper;
+	private final boolean isGzipEnabled;
+	private final Map<Long, Menu> menus = new ConcurrentHashMap<>();
+
+	public MenuCache(RestaurantRepository restaurantRepo, ObjectMapper objectMapper, @Value("${menus.gzip:true}") boolean isGzipEnabled) {
+		this.restaurantRepo = restaurantRepo;
+		this.objectMapper = objectMapper;
+		this.isGzipEnabled = isGzipEnabled;
+	}
+
+	public boolean isGzipEnabled() {
+		return isGzipEnabled;
+	}
+
+	/**
+	 * To call in a transaction (the dishes are lazily loaded)
+	 */
+	public Menu get(Restaurant restaurant) {
+		final var cached = menus.get(restaurant.getId());
+		if (cached != null && cached.version == restaurant.getMenuVersion()) {
+			return cached;
+		}
+		final var menu = serialize(restaurant);
+		// cache only if the dishes didn't change between the reads of the version and of the dishes: the bytes must match the version (strong ETag)
+		if (Objects.equals(restaurantRepo.findMenuVersion(restaurant.getId()), menu.version)) {
+			menus.merge(restaurant.getId(), menu, (previous, current) -> previous.version > current.version ? previous : current);
+		}
+		return menu;
+	}
+
+	public void evict(Long restaurantId) {
+		menus.remove(restaurantId);
+	}
+
+	private Menu serialize(Restaurant restaurant) {
+		try {
+			final var json = objectMapper.writeValueAsBytes(restaurant.getDishes().stream().map(DishesController::toDto).toList());
+			if (!isGzipEnabled) {
+				return new Menu(restaurant.getMenuVersion(), json, null);
+			}
+			final var gzip = new ByteArrayOutputStream(json.length / 4);
+			try (final var out = new GZIPOutputStream(gzip)) {
+				out.write(json);
+			}
+			return new Menu(restaurant.getMenuVersion(), json, gzip.toByteArray());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param json the serialized list of DishResponseDto. Must not be modified.
+	 * @param gzip json compressed, null if gzip is disabled. Must not be modified.
+	 */
+	public static record Menu(long version, byte[] json, byte[] gzip) {
+	}
+}
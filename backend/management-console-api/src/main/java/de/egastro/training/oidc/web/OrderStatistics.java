@@ -0,0 +1,210 @@
+package de.egastro.training.oidc.web;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hibernate.Session;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import de.egastro.training.oidc.domain.Order;
+import de.egastro.training.oidc.domain.OrderStatsBucket;
+import de.egastro.training.oidc.domain.persistence.ArchivedOrderRepository;
+import de.egastro.training.oidc.domain.persistence.OrderLineRow;
+import de.egastro.training.oidc.domain.persistence.OrderRepository;
+import de.egastro.training.oidc.domain.persistence.OrderStatsRepository;
+import de.egastro.training.oidc.domain.persistence.OrderStatsRow;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Maintains the {@link OrderStatsBucket hourly statistics} of restaurants orders.
+ * <p>
+ * {@link OrdersController} write paths record the change of each order contribution in the same transaction as the order change, with a single atomic
+ * UPDATE per affected hour. Buckets can also be recomputed from the orders (and archived orders) data, for instance after a dish price fix.
+ */
+@Component
+public class OrderStatistics {
+	private static final String INSERT_EMPTY_BUCKET = """
+			INSERT INTO order_stats_hourly (restaurant_id, hour_start, order_count, revenue_in_cents, prepared_count, prep_time_seconds)
+			VALUES (?, ?, 0, 0, 0, 0)""";
+
+	private final OrderStatsRepository statsRepo;
+	private final OrderRepository orderRepo;
+	private final ArchivedOrderRepository archivedOrderRepo;
+	private final EntityManager entityManager;
+
+	public OrderStatistics(
+			OrderStatsRepository statsRepo,
+			OrderRepository orderRepo,
+			ArchivedOrderRepository archivedOrderRepo,
+			EntityManager entityManager) {
+		this.statsRepo = statsRepo;
+		this.orderRepo = orderRepo;
+		this.archivedOrderRepo = archivedOrderRepo;
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * @param orders new orders of a restaurant, with their lines and dishes
+	 */
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void recordCreated(Long restaurantId, Collection<Order> orders) {
+		// a bulk of orders passed at the same time is a single UPDATE
+		orders
+				.stream()
+				.map(order -> Contribution.of(new OrderStatsRow(order.getPassedAt(), order.getEngagedFor(), order.getReadyAt(), revenueInCents(order))))
+				.collect(Collectors.toMap(Contribution::hourStart, c -> c, Contribution::plus))
+				.values()
+				.forEach(contribution -> apply(restaurantId, contribution));
+	}
+
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void recordDeleted(Order order) {
+		final var revenue = orderRepo.findLineRowsByOrderIdIn(List.of(order.getId())).stream().mapToLong(OrderStatistics::revenueInCents).sum();
+		apply(
+				order.getRestaurant().getId(),
+				Contribution.of(new OrderStatsRow(order.getPassedAt(), order.getEngagedFor(), order.getReadyAt(), revenue)).negate());
+	}
+
+	/**
+	 * To call when engagedFor or readyAt change: only the preparation time part of the order contribution is updated
+	 */
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void recordPrepTimeChange(
+			Long restaurantId,
+			Instant passedAt,
+			Instant previousEngagedFor,
+			Instant previousReadyAt,
+			Instant engagedFor,
+			Instant readyAt) {
+		final var previous = Contribution.of(new OrderStatsRow(passedAt, previousEngagedFor, previousReadyAt, 0L));
+		final var current = Contribution.of(new OrderStatsRow(passedAt, engagedFor, readyAt, 0L));
+		apply(
+				restaurantId,
+				new Contribution(
+						current.hourStart,
+						0L,
+						0L,
+						current.preparedCount - previous.preparedCount,
+						current.prepTimeSeconds - previous.prepTimeSeconds));
+	}
+
+	/**
+	 * Replaces the restaurant buckets for the hours overlapping [from, to) with sums computed from the orders and archived orders. Rows are streamed:
+	 * memory is proportional to the number of hours, not of orders.
+	 * <p>
+	 * This is a maintenance operation which is safe to run while orders are written:
+	 * <ul>
+	 * <li>the existing buckets of the range are write locked before the orders are read: increments of transactions still in progress are committed
+	 * before the read (and seen by it), and later ones wait for the recompute to commit</li>
+	 * <li>recomputed sums are added with the same create-or-increment as the write paths: an increment which waited on a deleted bucket, or a bucket
+	 * created concurrently for an hour which had none, is added to (not overwritten by) the recomputed sums</li>
+	 * </ul>
+	 * This relies on the READ COMMITTED isolation level (the default of the supported databases).
+	 */
+	@Transactional
+	public int recompute(Long restaurantId, Instant from, Instant to) {
+		final var firstHour = from.truncatedTo(ChronoUnit.HOURS);
+		final var lastHour = to.truncatedTo(ChronoUnit.HOURS);
+		final var end = lastHour.equals(to) ? to : lastHour.plus(Duration.ofHours(1));
+		statsRepo.lockHours(restaurantId, firstHour.getEpochSecond(), end.getEpochSecond());
+		statsRepo.deleteHours(restaurantId, firstHour.getEpochSecond(), end.getEpochSecond());
+
+		final Map<Long, Contribution> hours = new TreeMap<>();
+		try (
+				final Stream<OrderStatsRow> orders = orderRepo.streamStatsRows(restaurantId, firstHour, end);
+				final Stream<OrderStatsRow> archivedOrders = archivedOrderRepo.streamStatsRows(restaurantId, firstHour, end)) {
+			Stream.concat(orders, archivedOrders).map(Contribution::of).forEach(c -> hours.merge(c.hourStart, c, Contribution::plus));
+		}
+		hours.values().forEach(c -> apply(restaurantId, c));
+		return hours.size();
+	}
+
+	private void apply(Long restaurantId, Contribution c) {
+		if (c.isZero()) {
+			return;
+		}
+		if (statsRepo.increment(restaurantId, c.hourStart, c.orderCount, c.revenueInCents, c.preparedCount, c.prepTimeSeconds) > 0) {
+			return;
+		}
+		// first order of the hour: create the bucket in the current transaction (no second connection is needed) and then increment it, be the bucket
+		// created here or by a concurrent transaction
+		createBucketIfAbsent(restaurantId, c.hourStart);
+		statsRepo.increment(restaurantId, c.hourStart, c.orderCount, c.revenueInCents, c.preparedCount, c.prepTimeSeconds);
+	}
+
+	/**
+	 * Inserts an empty bucket inside a savepoint of the current transaction. If a concurrent transaction created the same bucket, the unique key violation
+	 * is rolled back to the savepoint and the current transaction goes on. The statement is run on the JDBC connection of the session: a failed JPA query
+	 * would mark the whole transaction for rollback.
+	 */
+	void createBucketIfAbsent(Long restaurantId, long hourStart) {
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			final var savepoint = connection.setSavepoint();
+			try (final var insert = connection.prepareStatement(INSERT_EMPTY_BUCKET)) {
+				insert.setLong(1, restaurantId);
+				insert.setLong(2, hourStart);
+				insert.executeUpdate();
+			} catch (SQLException e) {
+				connection.rollback(savepoint);
+				if (!isIntegrityConstraintViolation(e)) {
+					throw e;
+				}
+				return;
+			}
+			connection.releaseSavepoint(savepoint);
+		});
+	}
+
+	private static boolean isIntegrityConstraintViolation(SQLException e) {
+		// SQLSTATE class 23: integrity constraint violation
+		return e.getSQLState() != null && e.getSQLState().startsWith("23");
+	}
+
+	private static long revenueInCents(Order order) {
+		return order.getLines().stream().mapToLong(line -> (long) line.getQuantity() * line.getId().getDish().getPriceInCents()).sum();
+	}
+
+	private static long revenueInCents(OrderLineRow line) {
+		return (long) line.quantity() * line.dishPriceInCents();
+	}
+
+	private static record Contribution(long hourStart, long orderCount, long revenueInCents, long preparedCount, long prepTimeSeconds) {
+
+		static Contribution of(OrderStatsRow order) {
+			final var isPrepared = order.engagedFor() != null && order.readyAt() != null;
+			return new Contribution(
+					order.passedAt().truncatedTo(ChronoUnit.HOURS).getEpochSecond(),
+					1L,
+					order.revenueInCents() == null ? 0L : order.revenueInCents(),
+					isPrepared ? 1L : 0L,
+					isPrepared ? order.readyAt().getEpochSecond() - order.engagedFor().getEpochSecond() : 0L);
+		}
+
+		Contribution plus(Contribution other) {
+			return new Contribution(
+					hourStart,
+					orderCount + other.orderCount,
+					revenueInCents + other.revenueInCents,
+					preparedCount + other.preparedCount,
+					prepTimeSeconds + other.prepTimeSeconds);
+		}
+
+		Contribution negate() {
+			return new Contribution(hourStart, -orderCount, -revenueInCents, -preparedCount, -prepTimeSeconds);
+		}
+
+		boolean isZero() {
+			return orderCount == 0 && revenueInCents == 0 && preparedCount == 0 && prepTimeSeconds == 0;
+		}
+	}
+}
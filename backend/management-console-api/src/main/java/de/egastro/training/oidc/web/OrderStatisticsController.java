@@ -0,0 +1,125 @@
+package de.egastro.training.oidc.web;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import de.egastro.training.oidc.domain.OrderStatsBucket;
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.RestaurantGrant;
+import de.egastro.training.oidc.domain.persistence.OrderStatsRepository;
+import de.egastro.training.oidc.dtos.restaurants.OrderStatisticsDto;
+import de.egastro.training.oidc.dtos.restaurants.StatisticsGranularity;
+import de.egastro.training.oidc.security.RequiresRestaurantGrant;
+import de.egastro.training.oidc.web.RestaurantsController.RestaurantNotFoundException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/authorized-parties/{authorizedParty}/restaurants/{restaurantId}/order-statistics")
+@RequiredArgsConstructor
+@Tag(name = "Orders")
+public class OrderStatisticsController {
+
+	private final OrderStatsRepository statsRepo;
+	private final OrderStatistics orderStatistics;
+
+	/*------------------*/
+	/* Public interface */
+	/*------------------*/
+
+	@GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+	@Transactional(readOnly = true)
+	@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.MANAGER)
+	@Operation(
+			description = "Orders count, revenue and average preparation time per hour or day, read from hourly rollups. Periods without orders are omitted.",
+			responses = { @ApiResponse(description = "Ok"), @ApiResponse(responseCode = "404", description = "Restaurant not found") })
+	public List<OrderStatisticsDto> getOrderStatistics(
+			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
+			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			@RequestParam(name = "from") @Parameter(description = "epoch second, inclusive") long from,
+			@RequestParam(name = "to") @Parameter(description = "epoch second, exclusive") long to,
+			@RequestParam(name = "granularity", required = false, defaultValue = "HOUR") StatisticsGranularity granularity,
+			@RequestParam(name = "zone", required = false, defaultValue = "UTC") @Parameter(
+					description = "time-zone defining days boundaries (whole-hour offsets only)",
+					schema = @Schema(type = "string")) ZoneId zone)
+			throws RestaurantNotFoundException {
+		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
+			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
+		}
+		final var hours = statsRepo.findHours(restaurant.getId(), from, to);
+		if (granularity == StatisticsGranularity.HOUR) {
+			return hours.stream().map(hour -> toDto(hour.getHourStart(), hour)).toList();
+		}
+
+		// hours are sorted: sum the contiguous hours of each day
+		final var days = new ArrayList<OrderStatisticsDto>();
+		Long dayStart = null;
+		var day = new OrderStatsBucket();
+		for (final var hour : hours) {
+			final var hourDayStart = Instant.ofEpochSecond(hour.getHourStart()).atZone(zone).truncatedTo(ChronoUnit.DAYS).toEpochSecond();
+			if (dayStart != null && dayStart != hourDayStart) {
+				days.add(toDto(dayStart, day));
+				day = new OrderStatsBucket();
+			}
+			dayStart = hourDayStart;
+			day.setOrderCount(day.getOrderCount() + hour.getOrderCount());
+			day.setRevenueInCents(day.getRevenueInCents() + hour.getRevenueInCents());
+			day.setPreparedCount(day.getPreparedCount() + hour.getPreparedCount());
+			day.setPrepTimeSeconds(day.getPrepTimeSeconds() + hour.getPrepTimeSeconds());
+		}
+		if (dayStart != null) {
+			days.add(toDto(dayStart, day));
+		}
+		return days;
+	}
+
+	@PostMapping(path = "/recompute")
+	@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.MANAGER)
+	@Operation(
+			description = "Recomputes the hourly rollups overlapping [from, to) from the orders and archived orders (current dish prices for orders, prices at archival time for archived ones)",
+			responses = { @ApiResponse(responseCode = "204", description = "Recomputed"), @ApiResponse(responseCode = "404", description = "Restaurant not found") })
+	public ResponseEntity<Void> recomputeOrderStatistics(
+			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
+			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			@RequestParam(name = "from") @Parameter(description = "epoch second, inclusive") long from,
+			@RequestParam(name = "to") @Parameter(description = "epoch second, exclusive") long to)
+			throws RestaurantNotFoundException {
+		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
+			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
+		}
+		orderStatistics.recompute(restaurant.getId(), Instant.ofEpochSecond(from), Instant.ofEpochSecond(to));
+		return ResponseEntity.noContent().build();
+	}
+
+	/*------*/
+	/* DTOs */
+	/*------*/
+
+	static OrderStatisticsDto toDto(long from, OrderStatsBucket bucket) {
+		return new OrderStatisticsDto(
+				from,
+				bucket.getOrderCount(),
+				bucket.getRevenueInCents(),
+				bucket.getPreparedCount(),
+				bucket.getPreparedCount() == 0 ? null : (double) bucket.getPrepTimeSeconds() / bucket.getPreparedCount());
+	}
+}
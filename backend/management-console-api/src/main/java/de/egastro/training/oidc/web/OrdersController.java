@@ -1,40 +1,70 @@
 package de.egastro.training.oidc.web;
 
+import java.io.IOException;
 import java.net.URI;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.egastro.training.oidc.domain.Dish;
 import de.egastro.training.oidc.domain.Order;
 import de.egastro.training.oidc.domain.OrderLine;
+import de.egastro.training.oidc.domain.Order_;
 import de.egastro.training.oidc.domain.Restaurant;
 import de.egastro.training.oidc.domain.RestaurantGrant;
 import de.egastro.training.oidc.domain.persistence.DishRepository;
 import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
+import de.egastro.training.oidc.domain.persistence.OrderLineRow;
 import de.egastro.training.oidc.domain.persistence.OrderRepository;
+import de.egastro.training.oidc.domain.persistence.OrderSpecifications;
 import de.egastro.training.oidc.dtos.ErrorDto;
+import de.egastro.training.oidc.dtos.restaurants.DishResponseDto;
 import de.egastro.training.oidc.dtos.restaurants.OrderCreationDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderCreationResultDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderEventDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderEventDto.OrderEventType;
 import de.egastro.training.oidc.dtos.restaurants.OrderLineResponseDto;
 import de.egastro.training.oidc.dtos.restaurants.OrderLineUpdateDto;
 import de.egastro.training.oidc.dtos.restaurants.OrderResponseDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderStatusUpdateDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderStatus;
 import de.egastro.training.oidc.dtos.restaurants.OrderUpdateDto;
+import de.egastro.training.oidc.dtos.restaurants.OrdersPageDto;
 import de.egastro.training.oidc.security.EGastroAuthentication;
+import de.egastro.training.oidc.security.RequiresRestaurantGrant;
 import de.egastro.training.oidc.web.RestaurantsController.RestaurantNotFoundException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -43,7 +73,9 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
@@ -56,6 +88,16 @@ public class OrdersController {
 
 	private final OrderRepository orderRepo;
 	private final DishRepository dishRepo;
+	private final Validator validator;
+	private final OrdersFeed ordersFeed;
+	private final ApplicationEventPublisher eventPublisher;
+	private final ObjectMapper objectMapper;
+	private final OrderStatistics orderStatistics;
+	private final IdempotencyKeys idempotencyKeys;
+
+	private static final int MAX_PAGE_SIZE = 200;
+	static final Sort PAGE_SORT = Sort.by(Sort.Direction.DESC, Order_.PASSED_AT, Order_.ID);
+	private static final int MAX_BULK_SIZE = 1000;
 
 	/*------------------*/
 	/* Public interface */
@@ -64,15 +106,93 @@ public class OrdersController {
 	@GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
 	@Transactional(readOnly = true)
 	@PreAuthorize("worksFor(#restaurant)")
-	@Operation(responses = { @ApiResponse(description = "Ok"), @ApiResponse(responseCode = "404", description = "Restaurant not found") })
-	public List<OrderResponseDto> listOrders(
+	@Operation(
+			responses = {
+					@ApiResponse(description = "Ok"),
+					@ApiResponse(responseCode = "400", description = "Invalid cursor", content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(responseCode = "404", description = "Restaurant not found") })
+	public OrdersPageDto listOrders(
+			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
+			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			@RequestParam(name = "askedForFrom", required = false) @Parameter(description = "epoch second, inclusive") Long askedForFrom,
+			@RequestParam(name = "askedForTo", required = false) @Parameter(description = "epoch second, exclusive") Long askedForTo,
+			@RequestParam(name = "status", required = false) @Parameter(description = "any of these statuses") List<OrderStatus> statuses,
+			@RequestParam(name = "customer", required = false) String customer,
+			@RequestParam(name = "cursor", required = false) @Parameter(description = "nextCursor from previous page") String cursor,
+			@RequestParam(name = "size", required = false, defaultValue = "50") @Parameter(description = "page size, capped to 200") int size)
+			throws RestaurantNotFoundException,
+			InvalidCursorException {
+		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
+			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
+		}
+		final var pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		final var spec = OrderSpecifications
+				.ofRestaurant(restaurant.getId())
+				.and(
+						OrderSpecifications
+								.askedForBetween(InstantEpochSecondConverter.toInstant(askedForFrom), InstantEpochSecondConverter.toInstant(askedForTo)))
+				.and(OrderSpecifications.withStatusIn(statuses))
+				.and(OrderSpecifications.passedBy(customer))
+				.and(StringUtils.hasText(cursor) ? passedBefore(OrdersCursor.decode(cursor)) : null);
+		// fetch one more order than requested to know if there is a next page
+		final var orders = orderRepo.findBy(spec, q -> q.sortBy(PAGE_SORT).limit(pageSize + 1).all());
+		final var page = orders.size() > pageSize ? orders.subList(0, pageSize) : orders;
+		final var last = page.isEmpty() ? null : page.get(page.size() - 1);
+		final var nextCursor = orders.size() > pageSize ? new OrdersCursor(last.getPassedAt(), last.getId()).encode() : null;
+		return new OrdersPageDto(toDtos(page), nextCursor);
+	}
+
+	@GetMapping(path = "/export")
+	@Transactional(readOnly = true)
+	@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.VIEW_ORDERS)
+	@Operation(
+			description = "Streams all the orders passed in [from, to) as NDJSON (one OrderResponseDto per line) or CSV (one record per order line), oldest first",
+			responses = {
+					@ApiResponse(
+							description = "Ok",
+							content = { @Content(mediaType = "application/x-ndjson"), @Content(mediaType = "text/csv") }),
+					@ApiResponse(responseCode = "404", description = "Restaurant not found") })
+	public void exportOrders(
+			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
+			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			@RequestParam(name = "from") @Parameter(description = "passedAt epoch second, inclusive") long from,
+			@RequestParam(name = "to") @Parameter(description = "passedAt epoch second, exclusive") long to,
+			@RequestParam(name = "format", required = false, defaultValue = "NDJSON") OrdersExportFormat format,
+			HttpServletResponse response)
+			throws RestaurantNotFoundException,
+			IOException {
+		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
+			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
+		}
+		response.setContentType(format.mediaType);
+		response.setCharacterEncoding("UTF-8");
+		response
+				.setHeader(
+						HttpHeaders.CONTENT_DISPOSITION,
+						ContentDisposition
+								.attachment()
+								.filename("orders-%d-%d-%d.%s".formatted(restaurant.getId(), from, to, format.fileExtension))
+								.build()
+								.toString());
+		// the rows are read by chunks as they are written to the response: neither the result set nor the response body is held in memory
+		try (final var rows = orderRepo.streamExportRows(restaurant.getId(), Instant.ofEpochSecond(from), Instant.ofEpochSecond(to))) {
+			format.write(rows, response.getOutputStream(), objectMapper);
+		}
+	}
+
+	@GetMapping(path = "/feed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	@PreAuthorize("worksFor(#restaurant)")
+	@Operation(
+			description = "Server-Sent Events stream of the restaurant orders creations, updates and deletions. Event name is the OrderEventDto type.",
+			responses = { @ApiResponse(description = "Ok"), @ApiResponse(responseCode = "404", description = "Restaurant not found") })
+	public SseEmitter streamOrderEvents(
 			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
 			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant)
 			throws RestaurantNotFoundException {
 		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
 			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
 		}
-		return restaurant.getOrders().stream().map(OrdersController::toDto).toList();
+		return ordersFeed.subscribe(restaurant.getId());
 	}
 
 	@PostMapping(produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -80,10 +200,14 @@ public class OrdersController {
 	@PreAuthorize("isAuthenticated()")
 	@Operation(
 			responses = {
-					@ApiResponse(responseCode = "201", headers = @Header(name = HttpHeaders.LOCATION, description = "Path to the created order")),
+					@ApiResponse(
+							responseCode = "201",
+							headers = {
+									@Header(name = HttpHeaders.LOCATION, description = "Path to the created order"),
+									@Header(name = IdempotencyKeys.REPLAYED_HEADER, description = "true when the response is the one of a previous request with the same Idempotency-Key") }),
 					@ApiResponse(
 							responseCode = "400",
-							description = "Invalid OrderCreationDto",
+							description = "Invalid OrderCreationDto or Idempotency-Key",
 							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
 					@ApiResponse(
 							responseCode = "404",
@@ -91,11 +215,13 @@ public class OrdersController {
 							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
 					@ApiResponse(
 							responseCode = "409",
-							description = "Dish from another restaurant",
+							description = "Dish from another restaurant, or Idempotency-Key in use by a request in progress or used for another request",
 							content = @Content(schema = @Schema(implementation = ErrorDto.class))) })
 	public ResponseEntity<OrderResponseDto> createOrder(
 			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
 			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			@RequestHeader(name = IdempotencyKeys.HEADER, required = false) @Parameter(
+					description = "client generated unique value (UUID), to send again when retrying the request") String idempotencyKey,
 			@RequestBody @Valid OrderCreationDto dto,
 			EGastroAuthentication auth)
 			throws RestaurantNotFoundException,
@@ -103,12 +229,18 @@ public class OrdersController {
 		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
 			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
 		}
+		final var idempotentRequest = idempotencyKey == null ? null : idempotencyKeys.begin(idempotencyKey, auth.getName(), restaurant.getId(), dto);
+		final var replay = idempotentRequest == null ? null : idempotentRequest.getReplay().orElse(null);
+		if (replay != null) {
+			// retry of an order already created: don't touch the orders tables
+			return ResponseEntity.accepted().location(replay.location()).header(IdempotencyKeys.REPLAYED_HEADER, "true").body(replay.order());
+		}
 		final var orderedDishesIds = dto.lines().stream().map(OrderLineUpdateDto::dishId).toList();
 		final var orderedDishes = dishRepo.findAllById(orderedDishesIds);
 		if (orderedDishes.stream().anyMatch(d -> !Objects.equals(restaurant.getId(), d.getRestaurant().getId()))) {
 			throw new DishesFromAnotherRestaurantException();
 		}
-		if (!Objects.equals(dto.customer(), auth.getName()) && auth.getGrantsFor(restaurant.getId()).contains(RestaurantGrant.UPDATE_ORDERS)) {
+		if (!Objects.equals(dto.customer(), auth.getName()) && auth.isGrantedWith(restaurant.getId(), RestaurantGrant.UPDATE_ORDERS)) {
 			throw new ForbiddenException();
 		}
 		final var order = new Order(restaurant, dto.customer(), List.of(), Instant.now(), Instant.ofEpochSecond(dto.askedFor()));
@@ -124,10 +256,88 @@ public class OrdersController {
 		order.setLines(lines);
 		restaurant.getOrders().add(order);
 		final var saved = orderRepo.save(order);
-		return ResponseEntity
-				.accepted()
-				.location(URI.create("/realms/%s/restaurants/%d/orders/%d".formatted(authorizedParty, restaurant.getId(), saved.getId())))
-				.body(toDto(saved));
+		orderStatistics.recordCreated(restaurant.getId(), List.of(saved));
+		final var savedDto = toDto(saved);
+		publish(restaurant.getId(), OrderEventType.CREATED, saved.getId(), savedDto);
+		final var location = URI.create("/realms/%s/restaurants/%d/orders/%d".formatted(authorizedParty, restaurant.getId(), saved.getId()));
+		if (idempotentRequest != null) {
+			idempotentRequest.complete(location, savedDto);
+		}
+		return ResponseEntity.accepted().location(location).body(savedDto);
+	}
+
+	@PostMapping(path = "/bulk", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+	@Transactional()
+	@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.UPDATE_ORDERS)
+	@Operation(
+			description = "Creates many orders at once. Invalid orders are reported in the result and do not prevent the others from being created.",
+			responses = {
+					@ApiResponse(description = "One result per submitted order, in submission order"),
+					@ApiResponse(
+							responseCode = "400",
+							description = "Too many orders in the batch",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(
+							responseCode = "404",
+							description = "Restaurant not found",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))) })
+	public List<OrderCreationResultDto> createOrders(
+			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
+			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
+			@RequestBody @NotNull List<OrderCreationDto> dtos)
+			throws RestaurantNotFoundException,
+			TooManyOrdersException {
+		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
+			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
+		}
+		if (dtos.size() > MAX_BULK_SIZE) {
+			throw new TooManyOrdersException(dtos.size());
+		}
+
+		// a single lookup for the dishes of all orders
+		final var orderedDishesIds = dtos
+				.stream()
+				.filter(dto -> dto != null && dto.lines() != null)
+				.flatMap(dto -> dto.lines().stream())
+				.filter(lineDto -> lineDto != null && lineDto.dishId() != null)
+				.map(OrderLineUpdateDto::dishId)
+				.collect(Collectors.toSet());
+		final var orderedDishes = dishRepo.findAllById(orderedDishesIds).stream().collect(Collectors.toMap(Dish::getId, Function.identity()));
+
+		final var now = Instant.now();
+		final var results = new ArrayList<OrderCreationResultDto>(dtos.size());
+		final var orders = new ArrayList<Order>(dtos.size());
+		for (int i = 0; i < dtos.size(); ++i) {
+			try {
+				orders.add(toOrder(restaurant, dtos.get(i), orderedDishes, now));
+				results.add(null);
+			} catch (ResponseStatusException e) {
+				orders.add(null);
+				results.add(new OrderCreationResultDto(i, e.getStatusCode().value(), null, e.getReason()));
+			} catch (RuntimeException e) {
+				final var status = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+				if (status == null) {
+					throw e;
+				}
+				orders.add(null);
+				results.add(new OrderCreationResultDto(i, status.code().value(), null, e.getMessage()));
+			}
+		}
+
+		// orders are not added to restaurant.getOrders() which would load all the restaurant orders: inserts are batched (see hibernate.jdbc.batch_size)
+		final var created = orderRepo.saveAll(orders.stream().filter(Objects::nonNull).toList());
+		orderStatistics.recordCreated(restaurant.getId(), created);
+
+		// saveAll returns the saved entities in the order of the valid submitted ones
+		final var createdIterator = created.iterator();
+		for (int i = 0; i < orders.size(); ++i) {
+			if (orders.get(i) != null) {
+				final var order = createdIterator.next();
+				results.set(i, new OrderCreationResultDto(i, HttpStatus.CREATED.value(), order.getId(), null));
+				publish(restaurant.getId(), OrderEventType.CREATED, order.getId(), toDto(order));
+			}
+		}
+		return results;
 	}
 
 	@GetMapping(path = "/{orderId}", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -145,7 +355,7 @@ public class OrdersController {
 		if (!Objects.equals(order.getRestaurant().getId(), restaurantId)) {
 			throw new OrderNotFoundException(order.getId(), restaurantId, authorizedParty);
 		}
-		return toDto(order);
+		return toDtos(List.of(order)).get(0);
 	}
 
 	@PutMapping(path = "/{orderId}", consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -161,26 +371,111 @@ public class OrdersController {
 					@ApiResponse(
 							responseCode = "404",
 							description = "Order not found",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(
+							responseCode = "409",
+							description = "Order modified concurrently",
 							content = @Content(schema = @Schema(implementation = ErrorDto.class))) })
 	public ResponseEntity<Void> updateOrder(
 			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
 			@PathVariable("restaurantId") @NotNull Long restaurantId,
 			@PathVariable("orderId") @Parameter(schema = @Schema(type = "integer")) Order order,
 			@RequestBody @Valid OrderUpdateDto dto)
-			throws OrderNotFoundException {
+			throws OrderNotFoundException,
+			OrderStatusConflictException {
 		if (!Objects.equals(order.getRestaurant().getId(), restaurantId)) {
 			throw new OrderNotFoundException(order.getId(), restaurantId, authorizedParty);
 		}
+		final var previousEngagedFor = order.getEngagedFor();
+		final var previousReadyAt = order.getReadyAt();
 		order.setEngagedFor(InstantEpochSecondConverter.toInstant(dto.engagedFor()));
 		order.setReadyAt(InstantEpochSecondConverter.toInstant(dto.readyAt()));
 		order.setPickedAt(InstantEpochSecondConverter.toInstant(dto.pickedAt()));
-		final var saved = orderRepo.save(order);
+		final Order saved;
+		try {
+			saved = orderRepo.saveAndFlush(order);
+		} catch (OptimisticLockingFailureException e) {
+			throw new OrderStatusConflictException(order.getId());
+		}
+		orderStatistics
+				.recordPrepTimeChange(restaurantId, saved.getPassedAt(), previousEngagedFor, previousReadyAt, saved.getEngagedFor(), saved.getReadyAt());
+		publish(restaurantId, OrderEventType.UPDATED, saved.getId(), toDtos(List.of(saved)).get(0));
 		return ResponseEntity
 				.accepted()
 				.location(URI.create("/realms/%s/restaurants/%d/orders/%d".formatted(authorizedParty, restaurantId, saved.getId())))
 				.build();
 	}
 
+	@PutMapping(path = "/{orderId}/status", consumes = MediaType.APPLICATION_JSON_VALUE)
+	@Transactional()
+	@RequiresRestaurantGrant(param = "restaurantId", grant = RestaurantGrant.UPDATE_ORDERS)
+	@Operation(
+			description = "Moves the order to the next status of its lifecycle (ENGAGED -> READY -> PICKED) with a single conditional statement, without loading it first",
+			responses = {
+					@ApiResponse(
+							responseCode = "202",
+							headers = {
+									@Header(name = HttpHeaders.LOCATION, description = "Path to the updated order"),
+									@Header(name = HttpHeaders.ETAG, description = "New version of the order") }),
+					@ApiResponse(
+							responseCode = "400",
+							description = "Invalid OrderStatusUpdateDto",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(
+							responseCode = "404",
+							description = "Order not found",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(
+							responseCode = "409",
+							description = "Stale version or order not in a status allowing this transition",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))) })
+	public ResponseEntity<Void> updateOrderStatus(
+			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
+			@PathVariable("restaurantId") @NotNull Long restaurantId,
+			@PathVariable("orderId") @NotNull Long orderId,
+			@RequestBody @Valid OrderStatusUpdateDto dto)
+			throws OrderNotFoundException,
+			OrderStatusConflictException {
+		final var now = Instant.now();
+		final var updated = switch (dto.status()) {
+		case ENGAGED -> {
+			if (dto.engagedFor() == null) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "engagedFor is required to engage an order");
+			}
+			yield orderRepo.engage(orderId, restaurantId, dto.version(), Instant.ofEpochSecond(dto.engagedFor()));
+		}
+		case PENDING -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "An order can't be moved back to PENDING");
+		case READY -> orderRepo.markReady(orderId, restaurantId, dto.version(), now);
+		case PICKED -> orderRepo.markPicked(orderId, restaurantId, dto.version(), now);
+		};
+		if (updated == 0) {
+			// failure path only: tell "not found" from "conflict"
+			if (!orderRepo.existsByIdAndRestaurantId(orderId, restaurantId)) {
+				throw new OrderNotFoundException(orderId, restaurantId, authorizedParty);
+			}
+			throw new OrderStatusConflictException(orderId, dto.status());
+		}
+		final var isReady = dto.status() == OrderStatus.READY;
+		final var hasSubscribers = ordersFeed.hasSubscribers(restaurantId);
+		if (isReady || hasSubscribers) {
+			orderRepo.findById(orderId).ifPresent(order -> {
+				if (isReady) {
+					// readyAt was null before the transition
+					orderStatistics
+							.recordPrepTimeChange(restaurantId, order.getPassedAt(), order.getEngagedFor(), null, order.getEngagedFor(), order.getReadyAt());
+				}
+				if (hasSubscribers) {
+					publish(restaurantId, OrderEventType.UPDATED, orderId, toDtos(List.of(order)).get(0));
+				}
+			});
+		}
+		return ResponseEntity
+				.accepted()
+				.location(URI.create("/realms/%s/restaurants/%d/orders/%d".formatted(authorizedParty, restaurantId, orderId)))
+				.eTag(Long.toString(dto.version() + 1))
+				.build();
+	}
+
 	@DeleteMapping(path = "/{orderId}")
 	@Transactional()
 	@PreAuthorize("hasPassed(#order) or on(#restaurantId).isGrantedWith('UPDATE_ORDERS')")
@@ -199,31 +494,106 @@ public class OrdersController {
 		if (!Objects.equals(order.getRestaurant().getId(), restaurantId)) {
 			throw new OrderNotFoundException(order.getId(), restaurantId, authorizedParty);
 		}
+		orderStatistics.recordDeleted(order);
 		order.getRestaurant().getOrders().remove(order);
 		orderRepo.delete(order);
+		publish(restaurantId, OrderEventType.DELETED, order.getId(), null);
 		return ResponseEntity.accepted().build();
 	}
 
+	/*-----------*/
+	/* Internals */
+	/*-----------*/
+
+	private static Specification<Order> passedBefore(OrdersCursor cursor) {
+		return OrderSpecifications.passedBefore(cursor.passedAt(), cursor.id());
+	}
+
+	/**
+	 * Builds DTOs with two statements whatever the number of orders and lines: the one which fetched the orders and the one fetching all lines with their
+	 * dish
+	 */
+	private List<OrderResponseDto> toDtos(List<Order> orders) {
+		if (orders.isEmpty()) {
+			return List.of();
+		}
+		return toDtos(orders, orderRepo.findLineRowsByOrderIdIn(orders.stream().map(Order::getId).toList()));
+	}
+
+	/**
+	 * Events are dispatched to {@link OrdersFeed} subscribers only after the transaction commits
+	 */
+	private void publish(Long restaurantId, OrderEventType type, Long orderId, OrderResponseDto order) {
+		eventPublisher.publishEvent(new OrdersFeed.OrderEvent(restaurantId, new OrderEventDto(type, orderId, order)));
+	}
+
+	private Order toOrder(Restaurant restaurant, OrderCreationDto dto, Map<Long, Dish> orderedDishes, Instant passedAt)
+			throws ResponseStatusException,
+			DishNotFoundException,
+			DishesFromAnotherRestaurantException {
+		if (dto == null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid OrderCreationDto: null");
+		}
+		final var violations = validator.validate(dto);
+		if (!violations.isEmpty()) {
+			throw new ResponseStatusException(
+					HttpStatus.BAD_REQUEST,
+					"Invalid OrderCreationDto: %s"
+							.formatted(violations.stream().map(v -> "%s %s".formatted(v.getPropertyPath(), v.getMessage())).collect(Collectors.joining(", "))));
+		}
+		final var order = new Order(restaurant, dto.customer(), new ArrayList<>(dto.lines().size()), passedAt, Instant.ofEpochSecond(dto.askedFor()));
+		for (final var lineDto : dto.lines()) {
+			if (lineDto == null || lineDto.dishId() == null || lineDto.quantity() == null || lineDto.quantity() < 0) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid OrderLineUpdateDto: %s".formatted(lineDto));
+			}
+			final var dish = orderedDishes.get(lineDto.dishId());
+			if (dish == null) {
+				throw new DishNotFoundException(lineDto.dishId(), restaurant.getName(), restaurant.getAuthorizedParty());
+			}
+			if (!Objects.equals(restaurant.getId(), dish.getRestaurant().getId())) {
+				throw new DishesFromAnotherRestaurantException();
+			}
+			order.getLines().add(new OrderLine(new OrderLine.OrderLineId(order, dish), lineDto.quantity()));
+		}
+		return order;
+	}
+
 	/*------*/
 	/* DTOs */
 	/*------*/
 
 	static OrderResponseDto toDto(Order order) {
+		return toDto(order, order.getLines().stream().map(OrdersController::toDto).toList());
+	}
+
+	static List<OrderResponseDto> toDtos(List<Order> orders, List<OrderLineRow> lines) {
+		final var linesByOrderId = lines
+				.stream()
+				.collect(Collectors.groupingBy(OrderLineRow::orderId, Collectors.mapping(OrdersController::toDto, Collectors.toList())));
+		return orders.stream().map(order -> toDto(order, linesByOrderId.getOrDefault(order.getId(), List.of()))).toList();
+	}
+
+	static OrderResponseDto toDto(Order order, List<OrderLineResponseDto> lines) {
 		return new OrderResponseDto(
 				order.getId(),
 				order.getCustomerName(),
-				order.getLines().stream().map(OrdersController::toDto).toList(),
+				lines,
 				order.getPassedAt().getEpochSecond(),
 				order.getAskedFor().getEpochSecond(),
 				InstantEpochSecondConverter.toEpochSechond(order.getEngagedFor()),
 				InstantEpochSecondConverter.toEpochSechond(order.getReadyAt()),
-				InstantEpochSecondConverter.toEpochSechond(order.getPickedAt()));
+				InstantEpochSecondConverter.toEpochSechond(order.getPickedAt()),
+				order.getVersion());
 	}
 
 	static OrderLineResponseDto toDto(OrderLine line) {
 		return new OrderLineResponseDto(DishesController.toDto(line.getId().getDish()), line.getQuantity());
 	}
 
+	static OrderLineResponseDto toDto(OrderLineRow line) {
+		return new OrderLineResponseDto(new DishResponseDto(line.dishId(), line.dishName(), line.dishPriceInCents()), line.quantity());
+	}
+
 	/*------------*/
 	/* Exceptions */
 	/*------------*/
@@ -246,6 +616,19 @@ public class OrdersController {
 		}
 	}
 
+	@ResponseStatus(HttpStatus.CONFLICT)
+	static class OrderStatusConflictException extends RuntimeException {
+		private static final long serialVersionUID = -7304717296546640470L;
+
+		public OrderStatusConflictException(Long id) {
+			super("Order %d was modified concurrently".formatted(id));
+		}
+
+		public OrderStatusConflictException(Long id, OrderStatus status) {
+			super("Order %d was modified concurrently or can't transition to %s".formatted(id, status));
+		}
+	}
+
 	@ResponseStatus(HttpStatus.CONFLICT)
 	static class DishesFromAnotherRestaurantException extends RuntimeException {
 		private static final long serialVersionUID = 8007189359123503370L;
@@ -255,6 +638,24 @@ public class OrdersController {
 		}
 	}
 
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	static class InvalidCursorException extends RuntimeException {
+		private static final long serialVersionUID = -1650546917399245315L;
+
+		public InvalidCursorException(String cursor) {
+			super("Invalid orders cursor: %s".formatted(cursor));
+		}
+	}
+
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	static class TooManyOrdersException extends RuntimeException {
+		private static final long serialVersionUID = 5400905262780014571L;
+
+		public TooManyOrdersException(int count) {
+			super("Too many orders in a single batch: %d (max is %d)".formatted(count, MAX_BULK_SIZE));
+		}
+	}
+
 	@ResponseStatus(HttpStatus.FORBIDDEN)
 	static class ForbiddenException extends RuntimeException {
 		private static final long serialVersionUID = -3957883050266139229L;
@@ -0,0 +1,34 @@
+package de.egastro.training.oidc.web;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import de.egastro.training.oidc.web.OrdersController.InvalidCursorException;
+
+/**
+ * Keyset position in a list of orders sorted by passedAt and id descending, exposed to clients as an opaque string
+ */
+record OrdersCursor(Instant passedAt, Long id) {
+
+	String encode() {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString("%d:%d".formatted(passedAt.getEpochSecond(), id).getBytes(StandardCharsets.UTF_8));
+	}
+
+	static OrdersCursor decode(String cursor) throws InvalidCursorException {
+		final String[] keys;
+		try {
+			keys = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+		} catch (IllegalArgumentException e) {
+			throw new InvalidCursorException(cursor);
+		}
+		if (keys.length != 2) {
+			throw new InvalidCursorException(cursor);
+		}
+		try {
+			return new OrdersCursor(Instant.ofEpochSecond(Long.parseLong(keys[0])), Long.valueOf(keys[1]));
+		} catch (NumberFormatException e) {
+			throw new InvalidCursorException(cursor);
+		}
+	}
+}
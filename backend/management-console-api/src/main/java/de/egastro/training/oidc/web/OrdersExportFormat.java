@@ -0,0 +1,136 @@
+package de.egastro.training.oidc.web;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
+import de.egastro.training.oidc.domain.persistence.OrderExportRow;
+import de.egastro.training.oidc.dtos.restaurants.DishResponseDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderLineResponseDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderResponseDto;
+
+/**
+ * Orders export formats. Rows are written as they are read from the database: at most one order is held in memory, whatever the number of exported
+ * orders.
+ */
+enum OrdersExportFormat {
+	/**
+	 * One {@link OrderResponseDto} per line
+	 */
+	NDJSON("application/x-ndjson", "ndjson") {
+		@Override
+		void write(Stream<OrderExportRow> rows, OutputStream out, ObjectMapper mapper) throws IOException {
+			final var iterator = rows.iterator();
+			OrderExportRow order = null;
+			var lines = new ArrayList<OrderLineResponseDto>();
+			while (iterator.hasNext()) {
+				final var row = iterator.next();
+				// rows of an order are contiguous
+				if (order != null && !order.orderId().equals(row.orderId())) {
+					writeOrder(order, lines, out, mapper);
+					lines = new ArrayList<>();
+				}
+				order = row;
+				if (row.dishId() != null) {
+					lines.add(new OrderLineResponseDto(new DishResponseDto(row.dishId(), row.dishName(), row.dishPriceInCents()), row.quantity()));
+				}
+			}
+			if (order != null) {
+				writeOrder(order, lines, out, mapper);
+			}
+			out.flush();
+		}
+
+		private static void writeOrder(OrderExportRow order, List<OrderLineResponseDto> lines, OutputStream out, ObjectMapper mapper) throws IOException {
+			out
+					.write(
+							mapper
+									.writeValueAsBytes(
+											new OrderResponseDto(
+													order.orderId(),
+													order.customerName(),
+													lines,
+													order.passedAt().getEpochSecond(),
+													order.askedFor().getEpochSecond(),
+													InstantEpochSecondConverter.toEpochSechond(order.engagedFor()),
+													InstantEpochSecondConverter.toEpochSechond(order.readyAt()),
+													InstantEpochSecondConverter.toEpochSechond(order.pickedAt()),
+													order.version())));
+			out.write('\n');
+		}
+	},
+
+	/**
+	 * One record per order line (orders without lines have empty dish and quantity columns), instants as epoch seconds
+	 */
+	CSV("text/csv", "csv") {
+		private static final String HEADER = "order_id,customer,passed_at,asked_for,engaged_for,ready_at,picked_at,dish_id,dish_name,dish_price_in_cents,quantity";
+
+		@Override
+		void write(Stream<OrderExportRow> rows, OutputStream out, ObjectMapper mapper) throws IOException {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writer.write(HEADER);
+			writer.write("\r\n");
+			final var iterator = rows.iterator();
+			while (iterator.hasNext()) {
+				final var row = iterator.next();
+				writer
+						.write(
+								String
+										.join(
+												",",
+												row.orderId().toString(),
+												escape(row.customerName()),
+												epochSecond(row.passedAt()),
+												epochSecond(row.askedFor()),
+												epochSecond(row.engagedFor()),
+												epochSecond(row.readyAt()),
+												epochSecond(row.pickedAt()),
+												row.dishId() == null ? "" : row.dishId().toString(),
+												escape(row.dishName()),
+												row.dishPriceInCents() == null ? "" : row.dishPriceInCents().toString(),
+												row.quantity() == null ? "" : row.quantity().toString()));
+				writer.write("\r\n");
+			}
+			writer.flush();
+		}
+
+		private static String epochSecond(Instant instant) {
+			return instant == null ? "" : Long.toString(instant.getEpochSecond());
+		}
+
+		/**
+		 * RFC 4180 quoting, plus a leading quote on values a spreadsheet would evaluate as a formula
+		 */
+		private static String escape(String value) {
+			if (value == null || value.isEmpty()) {
+				return "";
+			}
+			final var safe = "=+-@".indexOf(value.charAt(0)) < 0 ? value : "'" + value;
+			if (safe.chars().noneMatch(c -> c == ',' || c == '"' || c == '\r' || c == '\n')) {
+				return safe;
+			}
+			return "\"%s\"".formatted(safe.replace("\"", "\"\""));
+		}
+	};
+
+	final String mediaType;
+	final String fileExtension;
+
+	OrdersExportFormat(String mediaType, String fileExtension) {
+		this.mediaType = mediaType;
+		this.fileExtension = fileExtension;
+	}
+
+	abstract void write(Stream<OrderExportRow> rows, OutputStream out, ObjectMapper mapper) throws IOException;
+}
@@ -0,0 +1,144 @@
+package de.egastro.training.oidc.web;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import de.egastro.training.oidc.dtos.restaurants.OrderEventDto;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fans out orders changes to the Server-Sent Events subscribers of each restaurant (kitchen screens).
+ * <p>
+ * Events are published by {@link OrdersController} write paths and dispatched only once the transaction is committed. Each subscriber has its own bounded
+ * queue drained by a virtual thread: a slow subscriber never blocks the write paths nor the other subscribers, and it is disconnected when its queue is
+ * full (the client is expected to reconnect and reload the orders).
+ */
+@Slf4j
+@Component
+public class OrdersFeed {
+	static final Duration SUBSCRIPTION_TIMEOUT = Duration.ofMinutes(30);
+	static final int SUBSCRIBER_QUEUE_CAPACITY = 256;
+
+	private final Map<Long, Set<Subscriber>> subscribersByRestaurantId = new ConcurrentHashMap<>();
+
+	public SseEmitter subscribe(Long restaurantId) {
+		return subscribe(restaurantId, new SseEmitter(SUBSCRIPTION_TIMEOUT.toMillis()));
+	}
+
+	/**
+	 * @param emitter a new emitter, not sent to yet
+	 */
+	SseEmitter subscribe(Long restaurantId, SseEmitter emitter) {
+		final var subscriber = new Subscriber(restaurantId, emitter);
+		// added inside compute: a set emptied (and removed) by a concurrent unsubscribe is never added to
+		subscribersByRestaurantId.compute(restaurantId, (id, subscribers) -> {
+			final var set = subscribers == null ? ConcurrentHashMap.<Subscriber>newKeySet() : subscribers;
+			set.add(subscriber);
+			return set;
+		});
+		subscriber.emitter.onCompletion(() -> unsubscribe(subscriber));
+		subscriber.emitter.onTimeout(() -> unsubscribe(subscriber));
+		subscriber.emitter.onError(e -> unsubscribe(subscriber));
+		subscriber.start();
+		return subscriber.emitter;
+	}
+
+	@TransactionalEventListener
+	public void onOrderEvent(OrderEvent event) {
+		final var subscribers = subscribersByRestaurantId.get(event.restaurantId());
+		if (subscribers == null) {
+			return;
+		}
+		for (final var subscriber : subscribers) {
+			if (!subscriber.queue.offer(event.payload())) {
+				log.warn("Orders feed subscriber for restaurant {} is too slow, disconnecting it", event.restaurantId());
+				unsubscribe(subscriber);
+				subscriber.emitter.complete();
+			}
+		}
+	}
+
+	/**
+	 * @return true if at least one kitchen screen listens to this restaurant orders (and it is worth building events payloads)
+	 */
+	public boolean hasSubscribers(Long restaurantId) {
+		return subscribersByRestaurantId.containsKey(restaurantId);
+	}
+
+	private void unsubscribe(Subscriber subscriber) {
+		subscribersByRestaurantId.computeIfPresent(subscriber.restaurantId, (id, subscribers) -> {
+			subscribers.remove(subscriber);
+			return subscribers.isEmpty() ? null : subscribers;
+		});
+		subscriber.stop();
+	}
+
+	/**
+	 * Published by the orders write paths
+	 */
+	public static record OrderEvent(Long restaurantId, OrderEventDto payload) {
+	}
+
+	private class Subscriber {
+		private final Long restaurantId;
+		private final SseEmitter emitter;
+		private final BlockingQueue<OrderEventDto> queue = new ArrayBlockingQueue<>(SUBSCRIBER_QUEUE_CAPACITY);
+		private Thread sender;
+
+		Subscriber(Long restaurantId, SseEmitter emitter) {
+			this.restaurantId = restaurantId;
+			this.emitter = emitter;
+		}
+
+		/**
+		 * Whatever ends the sender (stop, send failure or unexpected exception), the subscriber is unregistered and its emitter completed: no event is
+		 * queued for a subscriber nobody sends to
+		 */
+		void start() {
+			sender = Thread.ofVirtual().name("orders-feed-%d".formatted(restaurantId)).start(() -> {
+				Exception error = null;
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						final var event = queue.take();
+						emitter.send(SseEmitter.event().name(event.type().name()).id(String.valueOf(event.orderId())).data(event));
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (IOException | RuntimeException e) {
+					log.warn("Orders feed subscriber for restaurant {} failed, disconnecting it", restaurantId, e);
+					error = e;
+				} finally {
+					unsubscribe(this);
+					complete(error);
+				}
+			});
+		}
+
+		private void complete(Exception error) {
+			try {
+				if (error == null) {
+					emitter.complete();
+				} else {
+					emitter.completeWithError(error);
+				}
+			} catch (RuntimeException e) {
+				// already completed
+			}
+		}
+
+		void stop() {
+			if (sender != null) {
+				sender.interrupt();
+			}
+		}
+	}
+}
@@ -3,14 +3,22 @@ package de.egastro.training.oidc.web;
 import java.net.URI;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -20,18 +28,24 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import de.egastro.training.oidc.domain.Restaurant;
 import de.egastro.training.oidc.domain.RestaurantGrant;
+import de.egastro.training.oidc.domain.RestaurantPurge;
 import de.egastro.training.oidc.domain.UserRestaurantGrant;
+import de.egastro.training.oidc.domain.persistence.InstantEpochSecondConverter;
+import de.egastro.training.oidc.domain.persistence.RestaurantPurgeRepository;
 import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
 import de.egastro.training.oidc.domain.persistence.UserRestaurantGrantRepository;
 import de.egastro.training.oidc.dtos.ErrorDto;
 import de.egastro.training.oidc.dtos.restaurants.RestaurantCreationDto;
 import de.egastro.training.oidc.dtos.restaurants.RestaurantOverviewDto;
+import de.egastro.training.oidc.dtos.restaurants.RestaurantPurgeDto;
 import de.egastro.training.oidc.dtos.restaurants.RestaurantUpdateDto;
 import de.egastro.training.oidc.dtos.users.UserResponseDto;
 import de.egastro.training.oidc.feign.KeycloakUserService;
+import de.egastro.training.oidc.jobs.RestaurantsPurger;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.headers.Header;
@@ -43,33 +57,54 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @RestController
 @RequiredArgsConstructor
 @Tag(name = "Restaurants")
 public class RestaurantsController {
+	private static final String MANAGERS_REALM = "business";
 
 	private final KeycloakUserService userService;
 	private final RestaurantRepository restaurantRepo;
 	private final UserRestaurantGrantRepository userRestaurantGrantRepo;
+	private final RestaurantPurgeRepository purgeRepo;
+	private final RestaurantsPurger restaurantsPurger;
+	private final TransactionTemplate transaction;
+	private final MenuCache menuCache;
+	private final RestaurantsIndex restaurantsIndex;
+	private final UserGrantsCache userGrantsCache;
 
 	/*------------------*/
 	/* Public interface */
 	/*------------------*/
 
 	@GetMapping(path = "/authorized-parties", produces = MediaType.APPLICATION_JSON_VALUE)
-	@Transactional(readOnly = true)
 	@PreAuthorize("hasAuthority('EGASTRO_MANAGER')")
-	public List<String> listAuthorizedParties(@RequestParam(name = "like", required = false, defaultValue = "") @NotNull String like) {
-		final var restaurants = restaurantRepo.findByAuthorizedPartyContainsIgnoreCase(like);
-		return restaurants.stream().map(Restaurant::getAuthorizedParty).toList();
+	@Operation(description = "Distinct authorized parties containing the \"like\" value (ignoring case and accents), best matches first")
+	public List<String> listAuthorizedParties(
+			@RequestParam(name = "like", required = false, defaultValue = "") @NotNull String like,
+			@RequestParam(name = "limit", required = false, defaultValue = "20") @Parameter(description = "at most "
+					+ RestaurantsIndex.MAX_RESULTS) int limit) {
+		return restaurantsIndex.searchAuthorizedParties(like, limit);
+	}
+
+	@GetMapping(path = "/restaurants", produces = MediaType.APPLICATION_JSON_VALUE)
+	@PreAuthorize("hasAuthority('EGASTRO_MANAGER')")
+	@Operation(description = "Restaurants, across all authorized parties, with a name containing the \"like\" value (ignoring case and accents), best matches first")
+	public List<RestaurantOverviewDto> searchRestaurants(
+			@RequestParam(name = "like", required = false, defaultValue = "") @NotNull String like,
+			@RequestParam(name = "limit", required = false, defaultValue = "20") @Parameter(description = "at most "
+					+ RestaurantsIndex.MAX_RESULTS) int limit) {
+		return restaurantsIndex.searchRestaurants(like, limit);
 	}
 
 	@GetMapping(path = "/authorized-parties/{authorizedParty}/restaurants", produces = MediaType.APPLICATION_JSON_VALUE)
 	@Transactional(readOnly = true)
 	@PreAuthorize("permitAll()")
 	public List<RestaurantOverviewDto> listRestaurants(@PathVariable("authorizedParty") @NotEmpty String authorizedParty) {
-		final var restaurants = restaurantRepo.findByAuthorizedParty(authorizedParty);
+		final var restaurants = restaurantRepo.findByAuthorizedPartyAndDeletedAtIsNull(authorizedParty);
 		return restaurants.stream().map(RestaurantsController::toDto).toList();
 	}
 
@@ -77,7 +112,6 @@ public class RestaurantsController {
 			path = "/authorized-parties/{authorizedParty}/restaurants",
 			produces = MediaType.APPLICATION_JSON_VALUE,
 			consumes = MediaType.APPLICATION_JSON_VALUE)
-	@Transactional()
 	@PreAuthorize("hasAnyAuthority('EGASTRO_MANAGER')")
 	@Operation(
 			responses = {
@@ -98,17 +132,25 @@ public class RestaurantsController {
 			@RequestBody @Valid RestaurantCreationDto dto)
 			throws RestaurantWithSameNameAlreadyExistsException,
 			UserWithSameNameButDifferentEmailAlreadyExistsException {
-		if (restaurantRepo
-				.findByAuthorizedPartyContainsIgnoreCase(authorizedParty)
-				.stream()
-				.filter(r -> Objects.equals(r.getName().toLowerCase(), dto.name().toLowerCase()))
-				.findAny()
-				.isPresent()) {
-			throw new RestaurantWithSameNameAlreadyExistsException(dto.name(), authorizedParty);
+		// Keycloak is called before any database access: with open-in-view, the request would hold a pooled connection from its first query on
+		final var manager = getOrCreateUser(MANAGERS_REALM, dto.managerName(), dto.managerEmail());
+
+		final Restaurant restaurant;
+		try {
+			restaurant = transaction.execute(status -> {
+				final var created = saveWithUniqueName(new Restaurant(dto.name(), authorizedParty), dto.name());
+				userRestaurantGrantRepo
+						.saveAll(Stream.of(RestaurantGrant.values()).map(g -> new UserRestaurantGrant(manager.user().subject(), created, g)).toList());
+				restaurantsIndex.put(created);
+				userGrantsCache.invalidate(List.of(manager.user().subject()));
+				return created;
+			});
+		} catch (RuntimeException e) {
+			if (manager.isCreated()) {
+				deleteUser(MANAGERS_REALM, manager.user());
+			}
+			throw e;
 		}
-		final var restaurant = restaurantRepo.save(new Restaurant(dto.name(), authorizedParty));
-		final var manager = getOrCreateUser("business", dto.managerName(), dto.managerEmail());
-		userRestaurantGrantRepo.saveAll(Stream.of(RestaurantGrant.values()).map(g -> new UserRestaurantGrant(manager.subject(), restaurant, g)).toList());
 
 		return ResponseEntity
 				.accepted()
@@ -140,6 +182,10 @@ public class RestaurantsController {
 							responseCode = "400",
 							description = "Invalid RestaurantUpdateDto",
 							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
+					@ApiResponse(
+							responseCode = "409",
+							description = "Restaurant with same name already exists for that authorized party",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))),
 					@ApiResponse(
 							responseCode = "404",
 							description = "Restaurant not found",
@@ -150,37 +196,101 @@ public class RestaurantsController {
 			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant,
 			@RequestBody @Valid RestaurantUpdateDto dto)
 			throws RestaurantNotFoundException,
+			RestaurantWithSameNameAlreadyExistsException,
 			UserNotFoundException {
 		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
 			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
 		}
-		restaurant.setName(dto.name());
-		restaurant.setAuthorizedParty(authorizedParty);
+		final var isRenamed = !Objects.equals(restaurant.getNormalizedName(), Restaurant.normalizeName(dto.name()));
+		if (isRenamed) {
+			restaurantsIndex.put(saveWithUniqueName(restaurant, dto.name()));
+		} else {
+			restaurant.setName(dto.name());
+			restaurantsIndex.put(restaurantRepo.save(restaurant));
+		}
 
-		return ResponseEntity
-				.accepted()
-				.location(URI.create("/realms/%s/restaurants/%d".formatted(authorizedParty, restaurantRepo.save(restaurant).getId())))
-				.build();
+		return ResponseEntity.accepted().location(URI.create("/realms/%s/restaurants/%d".formatted(authorizedParty, restaurant.getId()))).build();
 	}
 
 	@DeleteMapping(path = "/authorized-parties/{authorizedParty}/restaurants/{restaurantId}")
 	@Transactional()
 	@PreAuthorize("hasAuthority('EGASTRO_REALM_MANAGER')")
-	@Operation(responses = { @ApiResponse(responseCode = "201") })
-	public ResponseEntity<Void> deleteRestaurant(
+	@Operation(
+			description = """
+					The restaurant is immediately hidden (and its name released), and its grants, orders, dishes and statistics are purged in the background. \
+					The progress of the purge is available at the returned location.""",
+			responses = {
+					@ApiResponse(
+							responseCode = "202",
+							headers = @Header(name = HttpHeaders.LOCATION, description = "Path to the purge status")),
+					@ApiResponse(
+							responseCode = "404",
+							description = "Restaurant not found",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))) })
+	public ResponseEntity<RestaurantPurgeDto> deleteRestaurant(
 			@PathVariable("authorizedParty") @NotEmpty String authorizedParty,
 			@PathVariable("restaurantId") @Parameter(schema = @Schema(type = "integer")) Restaurant restaurant) {
 		if (!Objects.equals(restaurant.getAuthorizedParty(), authorizedParty)) {
 			throw new RestaurantNotFoundException(authorizedParty, restaurant.getName());
 		}
-		restaurantRepo.delete(restaurant);
-		return ResponseEntity.accepted().build();
+		final var purge = restaurantsPurger.start(restaurant);
+		userGrantsCache.invalidate(userRestaurantGrantRepo.findUsernamesByRestaurantId(restaurant.getId()));
+		menuCache.evict(restaurant.getId());
+		restaurantsIndex.remove(restaurant.getId());
+		return ResponseEntity
+				.accepted()
+				.location(URI.create("/authorized-parties/%s/restaurant-purges/%d".formatted(authorizedParty, purge.getId())))
+				.body(toDto(purge));
+	}
+
+	@GetMapping(path = "/authorized-parties/{authorizedParty}/restaurant-purges/{purgeId}", produces = MediaType.APPLICATION_JSON_VALUE)
+	@Transactional(readOnly = true)
+	@PreAuthorize("hasAuthority('EGASTRO_REALM_MANAGER')")
+	@Operation(
+			responses = {
+					@ApiResponse(),
+					@ApiResponse(
+							responseCode = "404",
+							description = "Purge not found",
+							content = @Content(schema = @Schema(implementation = ErrorDto.class))) })
+	public RestaurantPurgeDto retrieveRestaurantPurge(@PathVariable("authorizedParty") @NotEmpty String authorizedParty, @PathVariable("purgeId") Long purgeId)
+			throws RestaurantPurgeNotFoundException {
+		return purgeRepo
+				.findById(purgeId)
+				.filter(purge -> Objects.equals(purge.getAuthorizedParty(), authorizedParty))
+				.map(RestaurantsController::toDto)
+				.orElseThrow(() -> new RestaurantPurgeNotFoundException(authorizedParty, purgeId));
 	}
 
 	/*-----------*/
 	/* Internals */
 	/*-----------*/
 
+	/**
+	 * Saves a new or renamed restaurant. Duplicates are detected with a probe of the (authorized_party, normalized_name) unique index, and concurrent
+	 * requests for the same name are arbitrated by the unique constraint.
+	 * <p>
+	 * The probe runs before the name is set: a managed restaurant would otherwise be auto-flushed with its new name by the probe query, which would then
+	 * find the restaurant itself (or fail on the unique constraint outside of the catch).
+	 *
+	 * @throws RestaurantWithSameNameAlreadyExistsException
+	 */
+	Restaurant saveWithUniqueName(Restaurant restaurant, String name) throws RestaurantWithSameNameAlreadyExistsException {
+		final var normalizedName = Restaurant.normalizeName(name);
+		final var isTaken = restaurant.getId() == null
+				? restaurantRepo.existsByAuthorizedPartyAndNormalizedName(restaurant.getAuthorizedParty(), normalizedName)
+				: restaurantRepo.existsByAuthorizedPartyAndNormalizedNameAndIdNot(restaurant.getAuthorizedParty(), normalizedName, restaurant.getId());
+		if (isTaken) {
+			throw new RestaurantWithSameNameAlreadyExistsException(name, restaurant.getAuthorizedParty());
+		}
+		restaurant.setName(name);
+		try {
+			return restaurantRepo.saveAndFlush(restaurant);
+		} catch (DataIntegrityViolationException e) {
+			throw new RestaurantWithSameNameAlreadyExistsException(restaurant.getName(), restaurant.getAuthorizedParty());
+		}
+	}
+
 	/**
 	 * <ul>
 	 * <li>if a user with same name and email already exist in this realm, return it.</li>
@@ -188,28 +298,80 @@ public class RestaurantsController {
 	 * <li>if a user with same email but different name, ignore the passed username in favor of the one already registered in Keycloak</li>
 	 * <li>if no user with same name or email, create a new one and return it</li>
 	 * </ul>
+	 * The searches by username and by email are run concurrently (on virtual threads): at most two round trips to Keycloak.
 	 *
 	 * @param  realmName
 	 * @param  username
 	 * @param  email
-	 * @return
+	 * @return the user, and whether this call created it (it should then be deleted if the operation it was created for fails)
 	 * @throws UserWithSameNameButDifferentEmailAlreadyExistsException
 	 */
-	UserResponseDto getOrCreateUser(String realmName, String username, String email) throws UserWithSameNameButDifferentEmailAlreadyExistsException {
-		final var usersWithSameUsername = userService.findUsers(realmName, username, true);
+	ResolvedUser getOrCreateUser(String realmName, String username, String email) throws UserWithSameNameButDifferentEmailAlreadyExistsException {
+		final List<UserResponseDto> usersWithSameUsername;
+		final List<UserResponseDto> usersWithSameEmail;
+		// closing the executor waits for both searches
+		try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			final var byUsername = executor.submit(inRequestContext(() -> userService.findUsers(realmName, username, true)));
+			final var byEmail = executor.submit(inRequestContext(() -> userService.findUsers(realmName, email, true)));
+			usersWithSameUsername = join(byUsername);
+			usersWithSameEmail = join(byEmail);
+		}
+
 		if (usersWithSameUsername.size() > 0) {
 			if (Objects.equals(email, usersWithSameUsername.get(0).email())) {
-				return usersWithSameUsername.get(0);
+				return new ResolvedUser(usersWithSameUsername.get(0), false);
 			}
 			throw new UserWithSameNameButDifferentEmailAlreadyExistsException(username, realmName);
 		}
 
-		final var usersWithSameEmail = userService.findUsers(realmName, email, true);
 		if (usersWithSameEmail.size() > 0) {
-			return usersWithSameEmail.get(0);
+			return new ResolvedUser(usersWithSameEmail.get(0), false);
 		}
 
-		return userService.createUser(realmName, username, email);
+		return new ResolvedUser(userService.createUser(realmName, username, email), true);
+	}
+
+	/**
+	 * Compensation of a user creation. A failure is logged but not thrown: the error to report is the one which triggered the compensation.
+	 */
+	void deleteUser(String realmName, UserResponseDto user) {
+		try {
+			userService.deleteUser(realmName, user.subject());
+		} catch (RuntimeException e) {
+			log.error("Failed to delete user {} from realm {}: it was created for a restaurant which could not be saved", user.username(), realmName, e);
+		}
+	}
+
+	/**
+	 * Runs the task with the request and security contexts of the calling thread (the Feign interceptors might need them)
+	 */
+	private static <T> Callable<T> inRequestContext(Callable<T> task) {
+		final var requestAttributes = RequestContextHolder.getRequestAttributes();
+		return DelegatingSecurityContextCallable.create(() -> {
+			RequestContextHolder.setRequestAttributes(requestAttributes);
+			try {
+				return task.call();
+			} finally {
+				RequestContextHolder.resetRequestAttributes();
+			}
+		}, SecurityContextHolder.getContext());
+	}
+
+	private static <T> T join(Future<T> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static record ResolvedUser(UserResponseDto user, boolean isCreated) {
 	}
 
 	/*------*/
@@ -220,6 +382,24 @@ public class RestaurantsController {
 		return new RestaurantOverviewDto(restaurant.getId(), restaurant.getAuthorizedParty(), restaurant.getName());
 	}
 
+	static RestaurantPurgeDto toDto(RestaurantPurge purge) {
+		return new RestaurantPurgeDto(
+				purge.getId(),
+				purge.getRestaurantId(),
+				purge.getAuthorizedParty(),
+				purge.getRestaurantName(),
+				purge.getStatus(),
+				purge.getDeletedGrants(),
+				purge.getDeletedOrders(),
+				purge.getDeletedOrderLines(),
+				purge.getDeletedArchivedOrders(),
+				purge.getDeletedArchivedOrderLines(),
+				purge.getDeletedDishes(),
+				purge.getStartedAt().getEpochSecond(),
+				InstantEpochSecondConverter.toEpochSechond(purge.getEndedAt()),
+				purge.getError());
+	}
+
 	/*------------*/
 	/* Exceptions */
 	/*------------*/
@@ -251,6 +431,15 @@ public class RestaurantsController {
 		}
 	}
 
+	@ResponseStatus(HttpStatus.NOT_FOUND)
+	static class RestaurantPurgeNotFoundException extends RuntimeException {
+		private static final long serialVersionUID = -2309815731862617435L;
+
+		public RestaurantPurgeNotFoundException(String authorizedParty, Long purgeId) {
+			super("No restaurant purge %d found in realm %s".formatted(purgeId, authorizedParty));
+		}
+	}
+
 	@ResponseStatus(HttpStatus.NOT_FOUND)
 	static class UserNotFoundException extends RuntimeException {
 		private static final long serialVersionUID = -6805597861946532891L;
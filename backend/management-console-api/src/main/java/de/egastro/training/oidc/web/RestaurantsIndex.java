@@ -0,0 +1,329 @@
+package de.egastro.training.oidc.web;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.AfterCommit;
+import de.egastro.training.oidc.domain.persistence.RestaurantNameRow;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import de.egastro.training.oidc.dtos.restaurants.RestaurantOverviewDto;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory n-gram index of the authorized parties and restaurant names, serving the type-ahead searches of the admin console without querying the
+ * database.
+ * <p>
+ * Names are normalized (case and accents are ignored) and indexed with all their 1, 2 and 3-grams: a query is resolved with the postings of one of its
+ * n-grams, then results are ranked (exact match, prefix, word prefix, then any other substring, shorter names first). Restaurant writes
+ * {@link #put(Restaurant) update} the index once their transaction is committed, and the index is reloaded from the database every
+ * restaurants-index.refresh-interval, to catch up with the changes made by other instances.
+ */
+@Slf4j
+@Component
+public class RestaurantsIndex {
+	public static final int MAX_RESULTS = 100;
+	private static final int MAX_GRAM_LENGTH = 3;
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+	private final RestaurantRepository restaurantRepo;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Entries entries = null;
+
+	/**
+	 * Changes applied while the index is reloaded, replayed on the reloaded entries. Null when no reload is in progress.
+	 */
+	private List<Consumer<Entries>> changesDuringReload = null;
+
+	public RestaurantsIndex(RestaurantRepository restaurantRepo) {
+		this.restaurantRepo = restaurantRepo;
+	}
+
+	/**
+	 * @return distinct authorized parties matching the query, best matches first
+	 */
+	public List<String> searchAuthorizedParties(String query, int limit) {
+		final var entries = loaded();
+		lock.readLock().lock();
+		try {
+			return entries.parties.search(normalize(query), limit, Comparator.naturalOrder());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return restaurants with a name matching the query, best matches first
+	 */
+	public List<RestaurantOverviewDto> searchRestaurants(String query, int limit) {
+		final var entries = loaded();
+		lock.readLock().lock();
+		try {
+			return entries.restaurantNames
+					.search(
+							normalize(query),
+							limit,
+							Comparator.<Long, String>comparing(id -> entries.restaurants.get(id).name()).thenComparing(Comparator.naturalOrder()))
+					.stream()
+					.map(entries.restaurants::get)
+					.toList();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * To call when a restaurant is created or renamed. The index is updated once the current transaction (if any) is committed.
+	 */
+	public void put(Restaurant restaurant) {
+		final var row = new RestaurantOverviewDto(restaurant.getId(), restaurant.getAuthorizedParty(), restaurant.getName());
+		AfterCommit.run(() -> apply(entries -> entries.put(row)));
+	}
+
+	/**
+	 * To call when a restaurant is deleted. The index is updated once the current transaction (if any) is committed.
+	 */
+	public void remove(Long restaurantId) {
+		AfterCommit.run(() -> apply(entries -> entries.remove(restaurantId)));
+	}
+
+	@Scheduled(fixedDelayString = "${restaurants-index.refresh-interval:PT10M}", initialDelayString = "${restaurants-index.refresh-interval:PT10M}")
+	public void reload() {
+		lock.writeLock().lock();
+		try {
+			if (changesDuringReload != null) {
+				// another reload is in progress
+				return;
+			}
+			changesDuringReload = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		final var reloaded = new Entries();
+		try {
+			restaurantRepo.findAllNames().forEach(reloaded::put);
+		} catch (RuntimeException e) {
+			lock.writeLock().lock();
+			try {
+				changesDuringReload = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			throw e;
+		}
+		lock.writeLock().lock();
+		try {
+			// a change committed during the database read might be missing from the reloaded entries
+			changesDuringReload.forEach(change -> change.accept(reloaded));
+			entries = reloaded;
+			changesDuringReload = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.debug("Reloaded {} restaurants in the search index", reloaded.restaurants.size());
+	}
+
+	private Entries loaded() {
+		lock.readLock().lock();
+		try {
+			if (entries != null) {
+				return entries;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		reload();
+		lock.readLock().lock();
+		try {
+			// null only if an initial load is still in progress in another thread
+			return entries == null ? new Entries() : entries;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void apply(Consumer<Entries> change) {
+		lock.writeLock().lock();
+		try {
+			if (entries != null) {
+				change.accept(entries);
+			}
+			if (changesDuringReload != null) {
+				changesDuringReload.add(change);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Lower case, without accents
+	 */
+	static String normalize(String value) {
+		return DIACRITICS.matcher(Normalizer.normalize(value.strip(), Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	private static class Entries {
+		private final Map<Long, RestaurantOverviewDto> restaurants = new HashMap<>();
+		private final Map<String, Integer> restaurantCountByParty = new HashMap<>();
+		private final NGramIndex<String> parties = new NGramIndex<>();
+		private final NGramIndex<Long> restaurantNames = new NGramIndex<>();
+
+		void put(RestaurantNameRow row) {
+			put(new RestaurantOverviewDto(row.id(), row.authorizedParty(), row.name()));
+		}
+
+		void put(RestaurantOverviewDto restaurant) {
+			final var previous = restaurants.put(restaurant.id(), restaurant);
+			if (previous == null || !previous.authorizedParty().equals(restaurant.authorizedParty())) {
+				if (previous != null) {
+					decrementParty(previous.authorizedParty());
+				}
+				if (restaurantCountByParty.merge(restaurant.authorizedParty(), 1, Integer::sum) == 1) {
+					parties.put(restaurant.authorizedParty(), normalize(restaurant.authorizedParty()));
+				}
+			}
+			restaurantNames.put(restaurant.id(), normalize(restaurant.name()));
+		}
+
+		void remove(Long restaurantId) {
+			final var previous = restaurants.remove(restaurantId);
+			if (previous != null) {
+				decrementParty(previous.authorizedParty());
+				restaurantNames.remove(restaurantId);
+			}
+		}
+
+		private void decrementParty(String authorizedParty) {
+			if (restaurantCountByParty.computeIfPresent(authorizedParty, (party, count) -> count > 1 ? count - 1 : null) == null) {
+				parties.remove(authorizedParty);
+			}
+		}
+	}
+
+	/**
+	 * Postings of all the 1, 2 and 3-grams of normalized terms. Not thread-safe.
+	 */
+	private static class NGramIndex<K> {
+		private final Map<K, String> terms = new HashMap<>();
+		private final Map<String, Set<K>> postings = new HashMap<>();
+
+		void put(K key, String term) {
+			remove(key);
+			terms.put(key, term);
+			for (final var gram : grams(term)) {
+				postings.computeIfAbsent(gram, g -> new HashSet<>()).add(key);
+			}
+		}
+
+		void remove(K key) {
+			final var term = terms.remove(key);
+			if (term == null) {
+				return;
+			}
+			for (final var gram : grams(term)) {
+				final var keys = postings.get(gram);
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					postings.remove(gram);
+				}
+			}
+		}
+
+		/**
+		 * @param query     normalized
+		 * @param tieBreaker to sort keys with the same rank
+		 */
+		List<K> search(String query, int limit, Comparator<K> tieBreaker) {
+			final var size = Math.max(0, Math.min(limit, MAX_RESULTS));
+			if (size == 0) {
+				return List.of();
+			}
+			// without a query, all the terms are listed in the tie-breaker order
+			final var ranking = query.isEmpty() ? tieBreaker
+					: Comparator.<K>comparingInt(key -> rank(terms.get(key), query)).thenComparingInt(key -> terms.get(key).length()).thenComparing(tieBreaker);
+
+			// bounded heap of the best candidates, worst on top
+			final var best = new PriorityQueue<K>(size + 1, ranking.reversed());
+			for (final var key : candidates(query)) {
+				if (query.length() > MAX_GRAM_LENGTH && !terms.get(key).contains(query)) {
+					continue;
+				}
+				best.add(key);
+				if (best.size() > size) {
+					best.poll();
+				}
+			}
+			final var results = new ArrayList<>(best);
+			results.sort(ranking);
+			return results;
+		}
+
+		/**
+		 * @return the keys of all the terms containing the query, plus false positives if the query is longer than the grams
+		 */
+		private Collection<K> candidates(String query) {
+			if (query.isEmpty()) {
+				return terms.keySet();
+			}
+			if (query.length() <= MAX_GRAM_LENGTH) {
+				return postings.getOrDefault(query, Set.of());
+			}
+			// the postings of the most selective trigram
+			Collection<K> candidates = null;
+			for (var i = 0; i + MAX_GRAM_LENGTH <= query.length(); ++i) {
+				final var keys = postings.get(query.substring(i, i + MAX_GRAM_LENGTH));
+				if (keys == null) {
+					return Set.of();
+				}
+				if (candidates == null || keys.size() < candidates.size()) {
+					candidates = keys;
+				}
+			}
+			return candidates;
+		}
+
+		private static int rank(String term, String query) {
+			if (term.equals(query)) {
+				return 0;
+			}
+			if (term.startsWith(query)) {
+				return 1;
+			}
+			for (var i = term.indexOf(query); i > 0; i = term.indexOf(query, i + 1)) {
+				if (!Character.isLetterOrDigit(term.charAt(i - 1))) {
+					return 2;
+				}
+			}
+			return 3;
+		}
+
+		private static Set<String> grams(String term) {
+			final var grams = new HashSet<String>();
+			for (var length = 1; length <= MAX_GRAM_LENGTH; ++length) {
+				for (var i = 0; i + length <= term.length(); ++i) {
+					grams.add(term.substring(i, i + length));
+				}
+			}
+			return grams;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package de.egastro.training.oidc.web;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.egastro.training.oidc.domain.persistence.AfterCommit;
+import de.egastro.training.oidc.dtos.users.UserGrantsDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * {@link UsersController#getUserGrants} responses, per username. The Keycloak mapper requests them on each token issuance and refresh.
+ * <p>
+ * Entries are invalidated when the grants of a user change (once the transaction changing it is committed), and expire after user-grants-cache.ttl to catch
+ * up with the changes made by other instances. At most user-grants-cache.max-size users are kept, the least recently used being evicted first. Hits,
+ * misses, evictions and size are published as the standard cache meters (cache.gets, cache.evictions and cache.size, tagged with cache=user-grants).
+ */
+@Component
+public class UserGrantsCache {
+	static final String CACHE_NAME = "user-grants";
+
+	private final Duration ttl;
+	private final int maxSize;
+	private final Counter hits;
+	private final Counter misses;
+	private final Counter evictions;
+
+	/**
+	 * In access order: the least recently used entries are the first to be evicted
+	 */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * Incremented with each invalidation: a response loaded before an invalidation is not cached, it might be stale
+	 */
+	private long invalidationCount = 0L;
+
+	public UserGrantsCache(
+			MeterRegistry meterRegistry,
+			@Value("${user-grants-cache.ttl:PT5M}") Duration ttl,
+			@Value("${user-grants-cache.max-size:10000}") int maxSize) {
+		this.ttl = ttl;
+		this.maxSize = maxSize;
+		this.hits = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit").register(meterRegistry);
+		this.misses = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss").register(meterRegistry);
+		this.evictions = Counter.builder("cache.evictions").tag("cache", CACHE_NAME).register(meterRegistry);
+		this.entries = new LinkedHashMap<>(16, .75f, true) {
+			private static final long serialVersionUID = -3957309870916839318L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > UserGrantsCache.this.maxSize) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+		Gauge.builder("cache.size", this, UserGrantsCache::size).tag("cache", CACHE_NAME).register(meterRegistry);
+	}
+
+	/**
+	 * @param loader called on cache misses, outside of any lock
+	 */
+	public UserGrantsDto get(String username, Supplier<UserGrantsDto> loader) {
+		final var now = Instant.now();
+		final long invalidationCountBeforeLoad;
+		synchronized (entries) {
+			final var entry = entries.get(username);
+			if (entry != null && entry.expiresAt.isAfter(now)) {
+				hits.increment();
+				return entry.grants;
+			}
+			invalidationCountBeforeLoad = invalidationCount;
+		}
+		misses.increment();
+		final var grants = loader.get();
+		synchronized (entries) {
+			if (invalidationCount == invalidationCountBeforeLoad) {
+				entries.put(username, new Entry(grants, now.plus(ttl)));
+			}
+		}
+		return grants;
+	}
+
+	/**
+	 * To call when the grants of users change. Entries are invalidated once the current transaction (if any) is committed.
+	 */
+	public void invalidate(Collection<String> usernames) {
+		AfterCommit.run(() -> {
+			synchronized (entries) {
+				++invalidationCount;
+				usernames.forEach(entries::remove);
+			}
+		});
+	}
+
+	int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	private static record Entry(UserGrantsDto grants, Instant expiresAt) {
+	}
+}
@@ -2,13 +2,13 @@ package de.egastro.training.oidc.web;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -17,7 +17,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import de.egastro.training.oidc.domain.RestaurantGrant;
-import de.egastro.training.oidc.domain.UserRestaurantGrant;
+import de.egastro.training.oidc.domain.persistence.UserGrantRow;
 import de.egastro.training.oidc.domain.persistence.UserRestaurantGrantRepository;
 import de.egastro.training.oidc.dtos.users.UserGrantsDto;
 import de.egastro.training.oidc.dtos.users.UserResponseDto;
@@ -40,6 +40,8 @@ public class UsersController {
 
 	private final KeycloakUserService userService;
 
+	private final UserGrantsCache userGrantsCache;
+
 	@GetMapping(path = "/me", produces = MediaType.APPLICATION_JSON_VALUE)
 	@PreAuthorize("permitAll()")
 	// this route should have permitAll() access policy (it returns ANONYMOUS to unauthorized requests)
@@ -64,23 +66,23 @@ public class UsersController {
 
 	@GetMapping(path = "/{realm}/{username}/grants", produces = MediaType.APPLICATION_JSON_VALUE)
 	@PreAuthorize("hasAnyAuthority('EGASTRO_MANAGER', 'EGASTRO_BUSINESS', 'KEYCLOAK_MAPPER')")
-	@Transactional(readOnly = true)
+	// not transactional: cache hits should not take a connection from the pool
 	public UserGrantsDto getUserGrants(@PathVariable("realm") String realm, @PathVariable("username") String username) {
-		final var grants = userRestaurantGrantRepo.findByUsername(username);
-		return new UserGrantsDto(toGrantsByRestaurants(grants));
+		return userGrantsCache
+				.get(username, () -> {
+					final var rows = userRestaurantGrantRepo.findGrantRowsByUsername(username);
+					return new UserGrantsDto(toGrantsByRestaurants(rows), toGrantMasksByRestaurants(rows));
+				});
 	}
 
 	static UserSessionResponseDto toDto(EGastroAuthentication oauth2) {
-		final var iss = oauth2.getAttributes().getIssuer().toString().split("/");
-		final var realm = iss.length > 0 ? iss[iss.length - 1] : "";
-		final var roles = oauth2.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList();
 		return new UserSessionResponseDto(
 				new UserResponseDto(
-						realm,
+						Objects.requireNonNullElse(oauth2.getRealm(), ""),
 						oauth2.getAttributes().getSubject(),
 						oauth2.getAttributes().getPreferredUsername(),
 						oauth2.getAttributes().getEmail(),
-						roles),
+						oauth2.getRoles()),
 				oauth2
 						.getGrantsByRestaurantId()
 						.entrySet()
@@ -90,14 +92,17 @@ public class UsersController {
 				oauth2.getAttributes().getExpiresAt().getEpochSecond());
 	}
 
-	static Map<Long, List<String>> toGrantsByRestaurants(List<UserRestaurantGrant> grants) {
+	static Map<Long, List<String>> toGrantsByRestaurants(List<UserGrantRow> grants) {
 		return grants
 				.stream()
 				.collect(
 						Collectors
-								.groupingBy(
-										g -> g.getRestaurant().getId(),
-										TreeMap::new,
-										Collectors.mapping((UserRestaurantGrant g) -> g.getGrant().toString(), Collectors.toList())));
+								.groupingBy(UserGrantRow::restaurantId, TreeMap::new, Collectors.mapping((UserGrantRow g) -> g.grant().toString(), Collectors.toList())));
+	}
+
+	static Map<Long, Integer> toGrantMasksByRestaurants(List<UserGrantRow> grants) {
+		final var masks = new TreeMap<Long, Integer>();
+		grants.forEach(g -> masks.merge(g.restaurantId(), g.grant().mask(), (a, b) -> a | b));
+		return masks;
 	}
 }
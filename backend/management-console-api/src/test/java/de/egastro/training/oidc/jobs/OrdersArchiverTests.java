@@ -0,0 +1,80 @@
+package de.egastro.training.oidc.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import de.egastro.training.oidc.domain.Dish;
+import de.egastro.training.oidc.domain.Order;
+import de.egastro.training.oidc.domain.OrderLine;
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.ArchivedOrderRepository;
+import de.egastro.training.oidc.domain.persistence.DishRepository;
+import de.egastro.training.oidc.domain.persistence.OrderRepository;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import jakarta.persistence.EntityManager;
+
+@DataJpaTest
+@Import(OrdersArchiver.class)
+class OrdersArchiverTests {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	RestaurantRepository restaurantRepo;
+
+	@Autowired
+	DishRepository dishRepo;
+
+	@Autowired
+	OrderRepository orderRepo;
+
+	@Autowired
+	ArchivedOrderRepository archivedOrderRepo;
+
+	@Autowired
+	OrdersArchiver archiver;
+
+	@Test
+	void givenOrderPickedBeforeRetention_whenArchiving_thenOrderAndLinesAreMovedWithArchivalTime() {
+		final var restaurant = restaurantRepo.save(new Restaurant("Archiver", "archiver"));
+		final var dish = dishRepo.save(new Dish(restaurant, "archived dish", 1250));
+		final var passedAt = Instant.now().minus(Duration.ofDays(40)).truncatedTo(ChronoUnit.SECONDS);
+		final var oldOrder = new Order(restaurant, "old-customer", new ArrayList<>(), passedAt, passedAt.plus(Duration.ofMinutes(30)));
+		oldOrder.getLines().add(new OrderLine(new OrderLine.OrderLineId(oldOrder, dish), 2));
+		oldOrder.setPickedAt(passedAt.plus(Duration.ofMinutes(35)));
+		orderRepo.save(oldOrder);
+		final var recentOrder = new Order(restaurant, "recent-customer", new ArrayList<>(), Instant.now(), Instant.now());
+		recentOrder.setPickedAt(Instant.now());
+		orderRepo.save(recentOrder);
+		em.flush();
+		em.clear();
+
+		final var before = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+		archiver.archivePickedOrders();
+		em.clear();
+
+		assertThat(orderRepo.findById(oldOrder.getId())).isEmpty();
+		assertThat(orderRepo.findById(recentOrder.getId())).isPresent();
+
+		final var archived = archivedOrderRepo.findById(oldOrder.getId()).orElseThrow();
+		assertThat(archived.getRestaurantId()).isEqualTo(restaurant.getId());
+		assertThat(archived.getPassedAt()).isEqualTo(passedAt);
+		assertThat(archived.getArchivedAt()).isBetween(before, Instant.now());
+
+		final var lines = archivedOrderRepo.findLineRowsByOrderIdIn(List.of(oldOrder.getId()));
+		assertThat(lines).hasSize(1);
+		assertThat(lines.get(0).dishPriceInCents()).isEqualTo(1250);
+		assertThat(lines.get(0).quantity()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,109 @@
+package de.egastro.training.oidc.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+
+@DataJpaTest
+@Import(RestaurantNamesBackfill.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RestaurantNamesBackfillTests {
+
+	@Autowired
+	RestaurantRepository restaurantRepo;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Autowired
+	RestaurantNamesBackfill backfill;
+
+	/**
+	 * Rows left without normalized name, or with the same name, would change what the other tests migrate
+	 */
+	@AfterEach
+	void deleteRestaurants() {
+		new JdbcTemplate(dataSource).update("DELETE FROM restaurants WHERE authorized_party IN ('backfill', 'constraint', 'kept-constraint')");
+	}
+
+	@Test
+	void givenRowsWithoutNormalizedName_whenBackfilling_thenTheyAreNormalizedLikeInJavaAndConflictsAreSkipped() {
+		final var jdbc = new JdbcTemplate(dataSource);
+		final var sushiBar = restaurantRepo.save(new Restaurant("Sushi Bar", "backfill")).getId();
+		final var conflicting = restaurantRepo.save(new Restaurant("Conflicting", "backfill")).getId();
+		final var olmuhle = restaurantRepo.save(new Restaurant("ÖLMÜHLE", "backfill")).getId();
+		final var deleted = restaurantRepo.save(new Restaurant("Deleted", "backfill")).getId();
+		// rows created before the normalized_name column existed
+		jdbc.update("UPDATE restaurants SET name = 'SUSHI BAR' WHERE id = ?", conflicting);
+		jdbc.update("UPDATE restaurants SET deleted_at = ? WHERE id = ?", Instant.now().getEpochSecond(), deleted);
+		jdbc.update("UPDATE restaurants SET normalized_name = NULL WHERE authorized_party = 'backfill'");
+
+		backfill.backfillNormalizedNames();
+
+		assertThat(normalizedName(jdbc, sushiBar)).isEqualTo("sushi bar");
+		assertThat(normalizedName(jdbc, conflicting)).isNull();
+		assertThat(normalizedName(jdbc, olmuhle)).isEqualTo(Restaurant.normalizeName("ÖLMÜHLE"));
+		assertThat(normalizedName(jdbc, deleted)).isNull();
+	}
+
+	@Test
+	void givenFormerNameConstraint_whenMigrating_thenItIsDroppedAndDeletedRestaurantsNamesCanBeReused() {
+		final var jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("ALTER TABLE restaurants ADD CONSTRAINT uk_restaurants_former_name UNIQUE (authorized_party, name)");
+
+		backfill.dropLegacyNameConstraint();
+
+		assertThat(uniqueConstraintsCount(jdbc, "uk_restaurants_former_name")).isZero();
+		final var transaction = new TransactionTemplate(transactionManager);
+		transaction.executeWithoutResult(status -> restaurantRepo.save(new Restaurant("Reused", "constraint")).markDeleted(Instant.now()));
+		transaction.executeWithoutResult(status -> restaurantRepo.save(new Restaurant("Reused", "constraint")));
+		assertThat(restaurantRepo.findByAuthorizedPartyAndDeletedAtIsNull("constraint")).hasSize(1);
+	}
+
+	@Test
+	void givenRowsLeftWithoutNormalizedName_whenMigrating_thenFormerNameConstraintIsKept() {
+		final var jdbc = new JdbcTemplate(dataSource);
+		restaurantRepo.save(new Restaurant("Burger House", "kept-constraint"));
+		final var conflicting = restaurantRepo.save(new Restaurant("Conflicting", "kept-constraint")).getId();
+		jdbc.update("UPDATE restaurants SET name = 'BURGER HOUSE' WHERE id = ?", conflicting);
+		jdbc.update("UPDATE restaurants SET normalized_name = NULL WHERE authorized_party = 'kept-constraint'");
+		jdbc.execute("ALTER TABLE restaurants ADD CONSTRAINT uk_restaurants_kept_name UNIQUE (authorized_party, name)");
+
+		backfill.afterSingletonsInstantiated();
+
+		assertThat(normalizedName(jdbc, conflicting)).isNull();
+		assertThat(uniqueConstraintsCount(jdbc, "uk_restaurants_kept_name")).isEqualTo(1);
+		backfill.dropLegacyNameConstraint();
+	}
+
+	static String normalizedName(JdbcTemplate jdbc, Long id) {
+		return jdbc.queryForObject("SELECT normalized_name FROM restaurants WHERE id = ?", String.class, id);
+	}
+
+	static int uniqueConstraintsCount(JdbcTemplate jdbc, String name) {
+		return jdbc
+				.queryForObject(
+						"SELECT COUNT(*) FROM information_schema.table_constraints WHERE LOWER(constraint_name) = ? AND constraint_type = 'UNIQUE'",
+						Integer.class,
+						name);
+	}
+}
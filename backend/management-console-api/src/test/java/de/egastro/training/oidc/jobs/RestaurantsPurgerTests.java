@@ -0,0 +1,187 @@
+package de.egastro.training.oidc.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.egastro.training.oidc.domain.Dish;
+import de.egastro.training.oidc.domain.Order;
+import de.egastro.training.oidc.domain.OrderLine;
+import de.egastro.training.oidc.domain.OrderStatsBucket;
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.RestaurantGrant;
+import de.egastro.training.oidc.domain.RestaurantPurge;
+import de.egastro.training.oidc.domain.UserRestaurantGrant;
+import de.egastro.training.oidc.domain.persistence.ArchivedOrderRepository;
+import de.egastro.training.oidc.domain.persistence.DishRepository;
+import de.egastro.training.oidc.domain.persistence.OrderRepository;
+import de.egastro.training.oidc.domain.persistence.OrderStatsRepository;
+import de.egastro.training.oidc.domain.persistence.RestaurantPurgeRepository;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import de.egastro.training.oidc.domain.persistence.UserRestaurantGrantRepository;
+import de.egastro.training.oidc.dtos.restaurants.RestaurantPurgeStatus;
+
+@DataJpaTest(properties = "restaurants-purge.batch-size=2")
+@Import({ RestaurantsPurger.class, RestaurantsPurgerTests.QueuedPurges.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RestaurantsPurgerTests {
+
+	@Autowired
+	RestaurantRepository restaurantRepo;
+
+	@Autowired
+	RestaurantPurgeRepository purgeRepo;
+
+	@Autowired
+	UserRestaurantGrantRepository grantRepo;
+
+	@Autowired
+	DishRepository dishRepo;
+
+	@Autowired
+	OrderRepository orderRepo;
+
+	@Autowired
+	ArchivedOrderRepository archivedOrderRepo;
+
+	@Autowired
+	OrderStatsRepository orderStatsRepo;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	RestaurantsPurger purger;
+
+	@Autowired
+	QueuedTasks purges;
+
+	@Test
+	void givenRestaurantWithMoreRowsThanBatchSize_whenDeleted_thenAllItsDataIsPurgedAndCounted() {
+		final var transaction = new TransactionTemplate(transactionManager);
+		final var restaurantId = transaction.execute(status -> restaurantWithData("Purged", 3, 3, 3, 2).getId());
+		final var otherRestaurantId = transaction.execute(status -> restaurantWithData("Kept", 1, 1, 1, 1).getId());
+
+		final var purgeId = transaction.execute(status -> purger.start(restaurantRepo.findById(restaurantId).orElseThrow()).getId());
+		assertThat(purges.runAll()).isEqualTo(1);
+
+		final var purge = purgeRepo.findById(purgeId).orElseThrow();
+		assertThat(purge.getStatus()).isEqualTo(RestaurantPurgeStatus.DONE);
+		assertThat(purge.getEndedAt()).isNotNull();
+		assertThat(purge.getDeletedGrants()).isEqualTo(3L);
+		assertThat(purge.getDeletedOrders()).isEqualTo(3L);
+		assertThat(purge.getDeletedOrderLines()).isEqualTo(3L);
+		assertThat(purge.getDeletedArchivedOrders()).isEqualTo(2L);
+		assertThat(purge.getDeletedArchivedOrderLines()).isEqualTo(2L);
+		assertThat(purge.getDeletedDishes()).isEqualTo(3L);
+		assertThat(restaurantRepo.findById(restaurantId)).isEmpty();
+		assertThat(archivedOrderRepo.findByRestaurantIdOrderByPassedAtDescIdDesc(restaurantId, Limit.of(10))).isEmpty();
+		assertThat(orderStatsRepo.findHours(restaurantId, 0L, Long.MAX_VALUE)).isEmpty();
+
+		assertThat(restaurantRepo.findById(otherRestaurantId)).isPresent();
+		assertThat(grantRepo.findIdsByRestaurantId(otherRestaurantId, Limit.of(10))).hasSize(1);
+		assertThat(orderRepo.findIdsByRestaurantId(otherRestaurantId, Limit.of(10))).hasSize(1);
+		assertThat(archivedOrderRepo.findIdsByRestaurantId(otherRestaurantId, Limit.of(10))).hasSize(1);
+		assertThat(dishRepo.findIdsByRestaurantId(otherRestaurantId, Limit.of(10))).hasSize(1);
+	}
+
+	@Test
+	void givenPurgeInterruptedMidway_whenResumingAtStartup_thenItCompletesAndKeepsCounting() {
+		final var transaction = new TransactionTemplate(transactionManager);
+		final var restaurantId = transaction.execute(status -> restaurantWithData("Interrupted", 2, 2, 2, 0).getId());
+		final var purgeId = transaction.execute(status -> {
+			// marked deleted and partially purged (one grant) by an instance which stopped before completing
+			final var restaurant = restaurantRepo.findById(restaurantId).orElseThrow();
+			restaurant.markDeleted(Instant.now());
+			grantRepo.deleteByIdIn(grantRepo.findIdsByRestaurantId(restaurantId, Limit.of(1)));
+			final var purge = new RestaurantPurge(restaurant, Instant.now());
+			purge.setStatus(RestaurantPurgeStatus.RUNNING);
+			purge.setDeletedGrants(1L);
+			return purgeRepo.save(purge).getId();
+		});
+
+		purger.resumeUnfinished();
+		assertThat(purges.runAll()).isEqualTo(1);
+
+		final var purge = purgeRepo.findById(purgeId).orElseThrow();
+		assertThat(purge.getStatus()).isEqualTo(RestaurantPurgeStatus.DONE);
+		assertThat(purge.getDeletedGrants()).isEqualTo(2L);
+		assertThat(purge.getDeletedOrders()).isEqualTo(2L);
+		assertThat(purge.getDeletedDishes()).isEqualTo(2L);
+		assertThat(restaurantRepo.findById(restaurantId)).isEmpty();
+		assertThat(purgeRepo.findByStatusIn(List.of(RestaurantPurgeStatus.PENDING, RestaurantPurgeStatus.RUNNING, RestaurantPurgeStatus.FAILED))).isEmpty();
+	}
+
+	/**
+	 * @return a restaurant with grants, dishes, orders and archived orders (each with a line on the first dish) and a statistics bucket
+	 */
+	Restaurant restaurantWithData(String name, int grantCount, int dishCount, int orderCount, int archivedOrderCount) {
+		final var restaurant = restaurantRepo.save(new Restaurant(name, "purger"));
+		for (var i = 0; i < grantCount; ++i) {
+			grantRepo.save(new UserRestaurantGrant("employee-%d".formatted(i), restaurant, RestaurantGrant.VIEW_ORDERS));
+		}
+		final var dishes = new ArrayList<Dish>();
+		for (var i = 0; i < dishCount; ++i) {
+			dishes.add(dishRepo.save(new Dish(restaurant, "%s dish %d".formatted(name, i), 1000)));
+		}
+		final var orders = new ArrayList<Long>();
+		for (var i = 0; i < orderCount + archivedOrderCount; ++i) {
+			final var order = new Order(restaurant, "customer", new ArrayList<>(), Instant.now(), Instant.now());
+			order.getLines().add(new OrderLine(new OrderLine.OrderLineId(order, dishes.get(0)), 1));
+			orders.add(orderRepo.save(order).getId());
+		}
+		orderRepo.flush();
+		final var archived = orders.subList(orderCount, orders.size());
+		if (!archived.isEmpty()) {
+			archivedOrderRepo.copyOrders(archived, Instant.now().getEpochSecond());
+			archivedOrderRepo.copyOrderLines(archived);
+			orderRepo.deleteLinesByOrderIdIn(archived);
+			orderRepo.deleteByIdIn(archived);
+		}
+		orderStatsRepo.save(new OrderStatsBucket(restaurant.getId(), 0L));
+		return restaurant;
+	}
+
+	/**
+	 * Purges submitted to the executor, run by the test thread when it calls {@link #runAll()}
+	 */
+	static class QueuedTasks implements TaskExecutor {
+		private final List<Runnable> tasks = new ArrayList<>();
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		int runAll() {
+			final var count = tasks.size();
+			tasks.forEach(Runnable::run);
+			tasks.clear();
+			return count;
+		}
+	}
+
+	@TestConfiguration
+	static class QueuedPurges {
+		@Bean(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+		QueuedTasks applicationTaskExecutor() {
+			return new QueuedTasks();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package de.egastro.training.oidc.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import com.c4_soft.springaddons.security.oidc.OpenidClaimSet;
+
+import de.egastro.training.oidc.domain.RestaurantGrant;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AuthenticationCacheTests {
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final AtomicInteger parseCount = new AtomicInteger();
+
+	@Test
+	void givenCachedToken_whenAuthenticatingAgain_thenItIsParsedOnceButEachRequestGetsItsOwnInstance() {
+		final var cache = new AuthenticationCache(meterRegistry, 10);
+		final var jwt = jwt("token", Instant.now().plus(Duration.ofMinutes(5)));
+
+		final var first = cache.get(jwt, () -> parse(jwt));
+		first.setDetails("first request details");
+		final var second = cache.get(jwt, () -> parse(jwt));
+
+		assertThat(parseCount).hasValue(1);
+		assertThat(second).isNotSameAs(first);
+		assertThat(second.getDetails()).isNull();
+		assertThat(second.isAuthenticated()).isTrue();
+		assertThat(second.getName()).isEqualTo("ch4mp");
+		assertThat(second.getRealm()).isEqualTo("sushibach");
+		assertThat(second.getRoles()).containsExactly("ROLE_KITCHEN");
+		assertThat(second.isGrantedWith(42L, RestaurantGrant.VIEW_ORDERS)).isTrue();
+		assertThat(second.getTokenString()).isEqualTo("token");
+		assertThat(meterRegistry.get("cache.gets").tag("result", "hit").counter().count()).isEqualTo(1.0);
+	}
+
+	@Test
+	void givenTokenExpired_whenAuthenticating_thenItIsNotCached() {
+		final var cache = new AuthenticationCache(meterRegistry, 10);
+		final var jwt = jwt("expired", Instant.now().minusSeconds(1));
+
+		cache.get(jwt, () -> parse(jwt));
+		cache.get(jwt, () -> parse(jwt));
+
+		assertThat(parseCount).hasValue(2);
+		assertThat(cache.size()).isZero();
+	}
+
+	@Test
+	void givenCachedTokenExpiring_whenAuthenticatingAfterItsExpiry_thenItIsParsedAgainAndEvicted() throws InterruptedException {
+		final var cache = new AuthenticationCache(meterRegistry, 10);
+		final var jwt = jwt("short-lived", Instant.now().plusMillis(200));
+		cache.get(jwt, () -> parse(jwt));
+		cache.get(jwt, () -> parse(jwt));
+		assertThat(parseCount).hasValue(1);
+
+		Thread.sleep(300);
+		cache.get(jwt, () -> parse(jwt));
+		assertThat(parseCount).hasValue(2);
+
+		cache.evictExpired();
+		assertThat(cache.size()).isZero();
+		assertThat(cache.tokensSize()).isZero();
+	}
+
+	@Test
+	void givenMaxSizeReached_whenCachingAnotherToken_thenTheLeastRecentlyUsedIsEvicted() {
+		final var cache = new AuthenticationCache(meterRegistry, 2);
+		final var expiresAt = Instant.now().plus(Duration.ofMinutes(5));
+		final var first = jwt("first", expiresAt);
+		final var second = jwt("second", expiresAt);
+		final var third = jwt("third", expiresAt);
+		cache.get(first, () -> parse(first));
+		cache.get(second, () -> parse(second));
+		cache.get(first, () -> parse(first));
+
+		cache.get(third, () -> parse(third));
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.tokensSize()).isEqualTo("first".length() + "third".length());
+		assertThat(meterRegistry.get("cache.evictions").counter().count()).isEqualTo(1.0);
+		cache.get(first, () -> parse(first));
+		assertThat(parseCount).hasValue(3);
+	}
+
+	@Test
+	void givenMaxSizeExceeded_whenCachingAnotherToken_thenTheLeastRecentlyUsedTenthIsEvictedAtOnce() {
+		final var cache = new AuthenticationCache(meterRegistry, 20);
+		final var expiresAt = Instant.now().plus(Duration.ofMinutes(5));
+		for (var i = 0; i < 20; ++i) {
+			final var jwt = jwt("token-%02d".formatted(i), expiresAt);
+			cache.get(jwt, () -> parse(jwt));
+		}
+		final var recentlyUsed = jwt("token-00", expiresAt);
+		cache.get(recentlyUsed, () -> parse(recentlyUsed));
+
+		final var overflow = jwt("overflow", expiresAt);
+		cache.get(overflow, () -> parse(overflow));
+
+		assertThat(cache.size()).isEqualTo(18);
+		assertThat(meterRegistry.get("cache.evictions").counter().count()).isEqualTo(3.0);
+		cache.get(recentlyUsed, () -> parse(recentlyUsed));
+		cache.get(overflow, () -> parse(overflow));
+		assertThat(parseCount).hasValue(21);
+	}
+
+	EGastroAuthentication parse(Jwt jwt) {
+		parseCount.incrementAndGet();
+		return new EGastroAuthentication(new OpenidClaimSet(jwt.getClaims()), List.of(new SimpleGrantedAuthority("ROLE_KITCHEN")), jwt.getTokenValue());
+	}
+
+	static Jwt jwt(String token, Instant expiresAt) {
+		return Jwt
+				.withTokenValue(token)
+				.header("alg", "RS256")
+				.issuer("https://localhost:8443/realms/sushibach")
+				.subject("ch4mp")
+				.claim(EGastroAuthentication.GRANT_MASKS_CLAIM, Map.of("42", RestaurantGrant.VIEW_ORDERS.mask()))
+				.issuedAt(expiresAt.minus(Duration.ofMinutes(10)))
+				.expiresAt(expiresAt)
+				.build();
+	}
+}
@@ -0,0 +1,88 @@
+package de.egastro.training.oidc.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.c4_soft.springaddons.security.oidc.OpenidClaimSet;
+
+import de.egastro.training.oidc.domain.RestaurantGrant;
+
+class EGastroAuthenticationTests {
+
+	@Test
+	void givenMasksClaim_whenDecoding_thenEachBitIsTheGrantWithTheSameOrdinal() {
+		final var auth = authentication(
+				Map
+						.of(
+								EGastroAuthentication.GRANT_MASKS_CLAIM,
+								Map.of("42", RestaurantGrant.MANAGER.mask() | RestaurantGrant.VIEW_ORDERS.mask(), "7", RestaurantGrant.EDIT_MENUS.mask())));
+
+		assertThat(auth.getGrantsFor(42L)).containsExactlyInAnyOrder(RestaurantGrant.MANAGER, RestaurantGrant.VIEW_ORDERS);
+		assertThat(auth.isGrantedWith(42L, RestaurantGrant.VIEW_ORDERS)).isTrue();
+		assertThat(auth.isGrantedWith(42L, RestaurantGrant.EDIT_MENUS)).isFalse();
+		assertThat(auth.isGrantedWith(7L, RestaurantGrant.EDIT_MENUS)).isTrue();
+		assertThat(auth.getGrantsByRestaurantId())
+				.containsExactly(
+						Map.entry(7L, EnumSet.of(RestaurantGrant.EDIT_MENUS)),
+						Map.entry(42L, EnumSet.of(RestaurantGrant.MANAGER, RestaurantGrant.VIEW_ORDERS)));
+	}
+
+	@Test
+	void givenLegacyNamesClaim_whenDecoding_thenGrantsAreTheSameAsWithMasks() {
+		final var auth = authentication(
+				Map.of(EGastroAuthentication.GRANTS_CLAIM, Map.of("42", List.of("MANAGER", "VIEW_ORDERS"), "7", List.of("EDIT_MENUS"))));
+
+		assertThat(auth.getGrantMaskFor(42L)).isEqualTo(RestaurantGrant.MANAGER.mask() | RestaurantGrant.VIEW_ORDERS.mask());
+		assertThat(auth.getGrantMaskFor(7L)).isEqualTo(RestaurantGrant.EDIT_MENUS.mask());
+		assertThat(auth.getGrantsByRestaurantId()).containsOnlyKeys(7L, 42L);
+	}
+
+	@Test
+	void givenBothClaims_whenDecoding_thenMasksClaimWins() {
+		final var auth = authentication(
+				Map
+						.of(
+								EGastroAuthentication.GRANT_MASKS_CLAIM,
+								Map.of("42", RestaurantGrant.VIEW_ORDERS.mask()),
+								EGastroAuthentication.GRANTS_CLAIM,
+								Map.of("42", List.of("MANAGER"))));
+
+		assertThat(auth.getGrantsFor(42L)).containsExactly(RestaurantGrant.VIEW_ORDERS);
+	}
+
+	@Test
+	void givenNoGrantsClaimOrUnknownRestaurant_whenChecking_thenNothingIsGranted() {
+		final var auth = authentication(Map.of());
+
+		assertThat(auth.getGrantsByRestaurantId()).isEmpty();
+		assertThat(auth.getGrantMaskFor(42L)).isZero();
+		assertThat(auth.getGrantMaskFor(null)).isZero();
+		assertThat(authentication(Map.of(EGastroAuthentication.GRANT_MASKS_CLAIM, Map.of("42", 1))).getGrantsFor(43L)).isEmpty();
+	}
+
+	@Test
+	void givenUnknownMaskBits_whenDecoding_thenTheyAreIgnored() {
+		final var auth = authentication(Map.of(EGastroAuthentication.GRANT_MASKS_CLAIM, Map.of("42", RestaurantGrant.MANAGER.mask() | 1 << 30)));
+
+		assertThat(auth.getGrantsFor(42L)).isEqualTo(Set.of(RestaurantGrant.MANAGER));
+	}
+
+	@Test
+	void givenIssuer_whenDecoding_thenRealmIsItsLastPathSegment() {
+		assertThat(authentication(Map.of()).getRealm()).isEqualTo("sushibach");
+	}
+
+	static EGastroAuthentication authentication(Map<String, Object> grantsClaims) {
+		final var claims = new HashMap<String, Object>(grantsClaims);
+		claims.put("iss", "https://localhost:8443/realms/sushibach");
+		claims.put("sub", "ch4mp");
+		return new EGastroAuthentication(new OpenidClaimSet(claims), List.of(), "token");
+	}
+}
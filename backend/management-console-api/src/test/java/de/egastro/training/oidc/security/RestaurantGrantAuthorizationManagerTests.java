@@ -0,0 +1,139 @@
+package de.egastro.training.oidc.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.Advisor;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.c4_soft.springaddons.security.oidc.OpenidClaimSet;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.RestaurantGrant;
+
+class RestaurantGrantAuthorizationManagerTests {
+	static final Long RESTAURANT_ID = 42L;
+
+	final ApplicationContextRunner contextRunner = new ApplicationContextRunner().withUserConfiguration(MethodSecurityConf.class);
+
+	@AfterEach
+	void clearSecurityContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void givenUserIsGrantedOnRestaurant_whenCallingAnnotatedMethods_thenAccessIsGranted() {
+		authenticate(RestaurantGrant.MANAGER.mask() | RestaurantGrant.VIEW_ORDERS.mask());
+		contextRunner.withBean(Kitchen.class).run(context -> {
+			final var kitchen = context.getBean(Kitchen.class);
+			assertThat(kitchen.manage(restaurant(RESTAURANT_ID))).isEqualTo("managed");
+			assertThat(kitchen.viewOrders(RESTAURANT_ID)).isEqualTo("viewed");
+		});
+	}
+
+	@Test
+	void givenUserIsNotGrantedOnRestaurant_whenCallingAnnotatedMethods_thenAccessIsDenied() {
+		authenticate(RestaurantGrant.VIEW_ORDERS.mask());
+		contextRunner.withBean(Kitchen.class).run(context -> {
+			final var kitchen = context.getBean(Kitchen.class);
+			assertThatThrownBy(() -> kitchen.manage(restaurant(RESTAURANT_ID))).isInstanceOf(AccessDeniedException.class);
+			assertThatThrownBy(() -> kitchen.viewOrders(RESTAURANT_ID + 1)).isInstanceOf(AccessDeniedException.class);
+			assertThat(kitchen.viewOrders(RESTAURANT_ID)).isEqualTo("viewed");
+		});
+	}
+
+	@Test
+	void givenNullRestaurantArgument_whenCallingAnnotatedMethods_thenAccessIsDenied() {
+		authenticate(RestaurantGrant.MANAGER.mask() | RestaurantGrant.VIEW_ORDERS.mask());
+		contextRunner.withBean(Kitchen.class).run(context -> {
+			final var kitchen = context.getBean(Kitchen.class);
+			assertThatThrownBy(() -> kitchen.manage(null)).isInstanceOf(AccessDeniedException.class);
+			assertThatThrownBy(() -> kitchen.manage(restaurant(null))).isInstanceOf(AccessDeniedException.class);
+			assertThatThrownBy(() -> kitchen.viewOrders(null)).isInstanceOf(AccessDeniedException.class);
+		});
+	}
+
+	@Test
+	void givenAnnotationReferencesUnknownParameter_whenStarting_thenStartupFails() {
+		contextRunner.withBean(KitchenWithUnknownParameter.class).run(context -> {
+			assertThat(context).hasFailed();
+			assertThat(context.getStartupFailure()).rootCause().isInstanceOf(IllegalStateException.class).hasMessageContaining("not found");
+		});
+	}
+
+	@Test
+	void givenAnnotationReferencesParameterOfWrongType_whenStarting_thenStartupFails() {
+		contextRunner.withBean(KitchenWithWrongParameterType.class).run(context -> {
+			assertThat(context).hasFailed();
+			assertThat(context.getStartupFailure())
+					.rootCause()
+					.isInstanceOf(IllegalStateException.class)
+					.hasMessageContaining("must be a Restaurant or a restaurant ID");
+		});
+	}
+
+	static void authenticate(int grantMask) {
+		final var claims = new OpenidClaimSet(
+				Map
+						.of(
+								"iss",
+								"https://localhost:8443/realms/sushibach",
+								"sub",
+								"ch4mp",
+								EGastroAuthentication.GRANT_MASKS_CLAIM,
+								Map.of(RESTAURANT_ID.toString(), grantMask)));
+		SecurityContextHolder.getContext().setAuthentication(new EGastroAuthentication(claims, List.of(), "token"));
+	}
+
+	static Restaurant restaurant(Long id) {
+		final var restaurant = new Restaurant("Kitchen", "sushibach");
+		restaurant.setId(id);
+		return restaurant;
+	}
+
+	@Configuration
+	@EnableMethodSecurity
+	static class MethodSecurityConf {
+		@Bean
+		@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+		static Advisor requiresRestaurantGrantAuthorizationInterceptor() {
+			return SecurityConfig.requiresRestaurantGrantAuthorizationInterceptor();
+		}
+	}
+
+	static class Kitchen {
+		@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.MANAGER)
+		public String manage(Restaurant restaurant) {
+			return "managed";
+		}
+
+		@RequiresRestaurantGrant(param = "restaurantId", grant = RestaurantGrant.VIEW_ORDERS)
+		public String viewOrders(Long restaurantId) {
+			return "viewed";
+		}
+	}
+
+	static class KitchenWithUnknownParameter {
+		@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.MANAGER)
+		public void manage(Long restaurantId) {
+		}
+	}
+
+	static class KitchenWithWrongParameterType {
+		@RequiresRestaurantGrant(param = "restaurant", grant = RestaurantGrant.MANAGER)
+		public void manage(String restaurant) {
+		}
+	}
+}
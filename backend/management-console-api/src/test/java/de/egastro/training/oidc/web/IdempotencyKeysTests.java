@@ -0,0 +1,218 @@
+package de.egastro.training.oidc.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.egastro.training.oidc.domain.persistence.IdempotencyKeyRepository;
+import de.egastro.training.oidc.dtos.restaurants.OrderResponseDto;
+import de.egastro.training.oidc.web.IdempotencyKeys.IdempotencyKeyConflictException;
+
+/**
+ * Each request runs in its own transaction, as in {@link OrdersController#createOrder}: keys are reserved until it completes
+ */
+@DataJpaTest
+@Import(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyKeysTests {
+	static final Long RESTAURANT_ID = 42L;
+
+	@Autowired
+	IdempotencyKeyRepository idempotencyKeyRepo;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Test
+	void givenCompletedRequest_whenRetryingWithSameBody_thenResponseIsReplayed() {
+		final var keys = idempotencyKeys(10, false);
+		final var key = UUID.randomUUID().toString();
+
+		final var first = complete(keys, key, Map.of("dish", 1), 1L);
+		final var retry = inTransaction(() -> keys.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 1)));
+
+		assertThat(first.getReplay()).isEmpty();
+		assertThat(retry.getReplay()).isPresent();
+		assertThat(retry.getReplay().get().location()).isEqualTo(location(1L));
+		assertThat(retry.getReplay().get().order().id()).isEqualTo(1L);
+	}
+
+	@Test
+	void givenCompletedRequest_whenRetryingWithAnotherBody_thenConflict() {
+		final var keys = idempotencyKeys(10, false);
+		final var key = UUID.randomUUID().toString();
+		complete(keys, key, Map.of("dish", 1), 1L);
+
+		assertThatThrownBy(() -> inTransaction(() -> keys.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 2))))
+				.isInstanceOf(IdempotencyKeyConflictException.class);
+	}
+
+	@Test
+	void givenRequestInProgress_whenMoreRequestsCompleteThanMaxKeys_thenKeyIsStillReserved() {
+		final var keys = idempotencyKeys(1, false);
+		final var key = UUID.randomUUID().toString();
+
+		inTransaction(() -> {
+			keys.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 1));
+			// other requests complete meanwhile, overflowing the completed responses
+			complete(keys, UUID.randomUUID().toString(), Map.of("dish", 2), 2L);
+			complete(keys, UUID.randomUUID().toString(), Map.of("dish", 3), 3L);
+
+			assertThatThrownBy(() -> inNewTransaction(() -> keys.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 1))))
+					.isInstanceOf(IdempotencyKeyConflictException.class)
+					.hasMessageContaining("in progress");
+			return null;
+		});
+	}
+
+	@Test
+	void givenRolledBackRequest_whenRetrying_thenKeyIsReleased() {
+		final var keys = idempotencyKeys(10, false);
+		final var key = UUID.randomUUID().toString();
+
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			keys.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 1));
+			status.setRollbackOnly();
+		});
+		final var retry = inTransaction(() -> keys.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 1)));
+
+		assertThat(retry.getReplay()).isEmpty();
+	}
+
+	@Test
+	void givenPersistentKeys_whenRetryingOnAnotherInstance_thenResponseIsReplayedFromDatabase() {
+		final var key = UUID.randomUUID().toString();
+		complete(idempotencyKeys(10, true), key, Map.of("dish", 1), 1L);
+
+		final var otherInstance = idempotencyKeys(10, true);
+		final var retry = inTransaction(() -> otherInstance.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 1)));
+
+		assertThat(retry.getReplay()).isPresent();
+		assertThat(retry.getReplay().get().location()).isEqualTo(location(1L));
+		assertThat(retry.getReplay().get().order().customer()).isEqualTo("ch4mp");
+		assertThatThrownBy(() -> inTransaction(() -> otherInstance.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 2))))
+				.isInstanceOf(IdempotencyKeyConflictException.class);
+	}
+
+	@Test
+	void givenPersistentKeys_whenAnotherInstanceCompletedTheSameKeyFirst_thenConflict() {
+		final var key = UUID.randomUUID().toString();
+		final var instance = idempotencyKeys(10, true);
+		final var otherInstance = idempotencyKeys(10, true);
+
+		assertThatThrownBy(() -> inTransaction(() -> {
+			final var request = instance.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 1));
+			// the other instance did not see the reservation (in memory only) and commits first
+			complete(otherInstance, key, Map.of("dish", 1), 2L);
+			request.complete(location(1L), order(1L));
+			return request;
+		})).isInstanceOf(IdempotencyKeyConflictException.class);
+	}
+
+	@Test
+	void givenExpiredKeyNotPurgedYet_whenReusingIt_thenANewRequestCompletes() {
+		final var key = UUID.randomUUID().toString();
+		final var keys = idempotencyKeys(10, true);
+		inNewTransaction(() -> idempotencyKeyRepo
+				.insert(id(key), "other-fingerprint", location(1L).toString(), "{}", Instant.now().minus(Duration.ofHours(2)).getEpochSecond()));
+
+		final var request = complete(keys, key, Map.of("dish", 2), 2L);
+		final var retry = inTransaction(() -> idempotencyKeys(10, true).begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 2)));
+
+		assertThat(request.getReplay()).isEmpty();
+		assertThat(retry.getReplay().get().location()).isEqualTo(location(2L));
+	}
+
+	@Test
+	void givenKeyReplayedFromDatabase_whenItExpiresBeforeNewerKeys_thenItIsNotReplayedAnymore() throws InterruptedException {
+		final var key = UUID.randomUUID().toString();
+		final var keys = idempotencyKeys(Duration.ofSeconds(4), 10, true);
+		complete(idempotencyKeys(Duration.ofSeconds(4), 10, true), key, Map.of("dish", 1), 1L);
+		Thread.sleep(1500L);
+		// completed after the first key, but added to the in-memory entries before it
+		complete(keys, UUID.randomUUID().toString(), Map.of("dish", 2), 2L);
+		assertThat(inTransaction(() -> keys.begin(key, "ch4mp", RESTAURANT_ID, Map.of("dish", 1))).getReplay()).isPresent();
+
+		Thread.sleep(3000L);
+		final var request = complete(keys, key, Map.of("dish", 3), 3L);
+
+		assertThat(request.getReplay()).isEmpty();
+	}
+
+	IdempotencyKeys idempotencyKeys(int maxKeys, boolean isPersistent) {
+		return idempotencyKeys(Duration.ofHours(1), maxKeys, isPersistent);
+	}
+
+	IdempotencyKeys idempotencyKeys(Duration ttl, int maxKeys, boolean isPersistent) {
+		return new IdempotencyKeys(idempotencyKeyRepo, objectMapper, ttl, maxKeys, isPersistent);
+	}
+
+	/**
+	 * Same hash as {@link IdempotencyKeys} of the key for ch4mp in {@link #RESTAURANT_ID}
+	 */
+	static String id(String key) {
+		try {
+			return HexFormat
+					.of()
+					.formatHex(
+							MessageDigest
+									.getInstance("SHA-256")
+									.digest("%s:%d:%s".formatted("ch4mp", RESTAURANT_ID, key).getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	IdempotencyKeys.IdempotentRequest complete(IdempotencyKeys keys, String key, Object body, Long orderId) {
+		return inNewTransaction(() -> {
+			final var request = keys.begin(key, "ch4mp", RESTAURANT_ID, body);
+			request.complete(location(orderId), order(orderId));
+			return request;
+		});
+	}
+
+	<T> T inTransaction(Supplier<T> action) {
+		return new TransactionTemplate(transactionManager).execute(status -> action.get());
+	}
+
+	<T> T inNewTransaction(Supplier<T> action) {
+		final var transaction = new TransactionTemplate(transactionManager);
+		transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return transaction.execute(status -> action.get());
+	}
+
+	static URI location(Long orderId) {
+		return URI.create("/restaurants/%d/orders/%d".formatted(RESTAURANT_ID, orderId));
+	}
+
+	static OrderResponseDto order(Long orderId) {
+		return new OrderResponseDto(orderId, "ch4mp", List.of(), 0L, 0L, null, null, null, 0L);
+	}
+}
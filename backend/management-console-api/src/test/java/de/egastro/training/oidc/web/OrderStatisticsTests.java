@@ -0,0 +1,161 @@
+package de.egastro.training.oidc.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.egastro.training.oidc.domain.Dish;
+import de.egastro.training.oidc.domain.Order;
+import de.egastro.training.oidc.domain.OrderLine;
+import de.egastro.training.oidc.domain.OrderStatsBucket;
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.DishRepository;
+import de.egastro.training.oidc.domain.persistence.OrderRepository;
+import de.egastro.training.oidc.domain.persistence.OrderStatsRepository;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import jakarta.persistence.EntityManager;
+
+@DataJpaTest
+@Import(OrderStatistics.class)
+class OrderStatisticsTests {
+	static final Instant HOUR = Instant.now().minus(Duration.ofDays(2)).truncatedTo(ChronoUnit.HOURS);
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	RestaurantRepository restaurantRepo;
+
+	@Autowired
+	DishRepository dishRepo;
+
+	@Autowired
+	OrderRepository orderRepo;
+
+	@Autowired
+	OrderStatsRepository statsRepo;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	OrderStatistics orderStatistics;
+
+	@Test
+	void givenOrdersPassedDuringTwoHours_whenRecordingCreation_thenEachHourBucketIsCreatedAndIncremented() {
+		final var restaurant = restaurantRepo.save(new Restaurant("Rollups", "rollups"));
+		final var dish = dishRepo.save(new Dish(restaurant, "rollup dish", 1000));
+		final var prepared = order(restaurant, dish, HOUR.plus(Duration.ofMinutes(5)), 2);
+		prepared.setEngagedFor(prepared.getAskedFor());
+		prepared.setReadyAt(prepared.getAskedFor().plus(Duration.ofMinutes(20)));
+
+		orderStatistics
+				.recordCreated(
+						restaurant.getId(),
+						orderRepo
+								.saveAll(
+										List
+												.of(
+														prepared,
+														order(restaurant, dish, HOUR.plus(Duration.ofMinutes(50)), 1),
+														order(restaurant, dish, HOUR.plus(Duration.ofMinutes(65)), 3))));
+		orderStatistics.recordCreated(restaurant.getId(), List.of(orderRepo.save(order(restaurant, dish, HOUR.plus(Duration.ofMinutes(10)), 1))));
+
+		final var hours = hours(restaurant);
+		assertThat(hours).hasSize(2);
+		assertThat(hours.get(0)).isEqualTo(new OrderStatsBucket(restaurant.getId(), HOUR.getEpochSecond(), 3L, 4000L, 1L, 1200L));
+		assertThat(hours.get(1)).isEqualTo(new OrderStatsBucket(restaurant.getId(), HOUR.getEpochSecond() + 3600L, 1L, 3000L, 0L, 0L));
+	}
+
+	@Test
+	void givenRecordedOrder_whenItBecomesReadyAndIsDeleted_thenPrepTimeIsAddedAndWholeContributionIsSubtracted() {
+		final var restaurant = restaurantRepo.save(new Restaurant("Rollups", "rollups"));
+		final var dish = dishRepo.save(new Dish(restaurant, "rollup dish", 1000));
+		final var kept = orderRepo.save(order(restaurant, dish, HOUR, 1));
+		final var deleted = orderRepo.save(order(restaurant, dish, HOUR.plus(Duration.ofMinutes(30)), 2));
+		orderStatistics.recordCreated(restaurant.getId(), List.of(kept, deleted));
+		em.flush();
+
+		deleted.setEngagedFor(deleted.getAskedFor());
+		deleted.setReadyAt(deleted.getAskedFor().plus(Duration.ofMinutes(15)));
+		orderStatistics
+				.recordPrepTimeChange(restaurant.getId(), deleted.getPassedAt(), null, null, deleted.getEngagedFor(), deleted.getReadyAt());
+		assertThat(hours(restaurant)).containsExactly(new OrderStatsBucket(restaurant.getId(), HOUR.getEpochSecond(), 2L, 3000L, 1L, 900L));
+
+		orderStatistics.recordDeleted(deleted);
+		assertThat(hours(restaurant)).containsExactly(new OrderStatsBucket(restaurant.getId(), HOUR.getEpochSecond(), 1L, 1000L, 0L, 0L));
+	}
+
+	@Test
+	void givenDriftedBuckets_whenRecomputing_thenHoursOfTheRangeAreReplacedWithSumsOfTheOrders() {
+		final var restaurant = restaurantRepo.save(new Restaurant("Recompute", "rollups"));
+		final var dish = dishRepo.save(new Dish(restaurant, "recomputed dish", 1000));
+		final var orders = orderRepo
+				.saveAll(List.of(order(restaurant, dish, HOUR.plus(Duration.ofMinutes(5)), 1), order(restaurant, dish, HOUR.plus(Duration.ofMinutes(70)), 2)));
+		orderStatistics.recordCreated(restaurant.getId(), orders);
+		em.flush();
+		// price fix after the orders were recorded, a stale bucket without orders and a bucket out of the recomputed range
+		dish.setPriceInCents(1500);
+		orderStatistics.createBucketIfAbsent(restaurant.getId(), HOUR.getEpochSecond() + 7200L);
+		statsRepo.increment(restaurant.getId(), HOUR.getEpochSecond() + 7200L, 5L, 5000L, 0L, 0L);
+		orderStatistics.createBucketIfAbsent(restaurant.getId(), HOUR.getEpochSecond() + 10800L);
+		statsRepo.increment(restaurant.getId(), HOUR.getEpochSecond() + 10800L, 1L, 100L, 0L, 0L);
+		em.flush();
+
+		final var count = orderStatistics
+				.recompute(restaurant.getId(), HOUR.plus(Duration.ofMinutes(30)), HOUR.plus(Duration.ofHours(2)).plus(Duration.ofMinutes(30)));
+
+		assertThat(count).isEqualTo(2);
+		assertThat(hours(restaurant))
+				.containsExactly(
+						new OrderStatsBucket(restaurant.getId(), HOUR.getEpochSecond(), 1L, 1500L, 0L, 0L),
+						new OrderStatsBucket(restaurant.getId(), HOUR.getEpochSecond() + 3600L, 1L, 3000L, 0L, 0L),
+						new OrderStatsBucket(restaurant.getId(), HOUR.getEpochSecond() + 10800L, 1L, 100L, 0L, 0L));
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	void givenBucketCreatedConcurrently_whenCreatingItAgain_thenTheCurrentTransactionIsCommitted() {
+		final var transaction = new TransactionTemplate(transactionManager);
+		final var restaurantId = transaction.execute(status -> restaurantRepo.save(new Restaurant("Concurrent rollups", "rollups")).getId());
+		final var hourStart = HOUR.getEpochSecond();
+		transaction.executeWithoutResult(status -> orderStatistics.createBucketIfAbsent(restaurantId, hourStart));
+
+		transaction.executeWithoutResult(status -> {
+			orderStatistics.createBucketIfAbsent(restaurantId, hourStart);
+			statsRepo.increment(restaurantId, hourStart, 1L, 500L, 0L, 0L);
+		});
+
+		assertThat(statsRepo.findHours(restaurantId, hourStart, hourStart + 3600L))
+				.containsExactly(new OrderStatsBucket(restaurantId, hourStart, 1L, 500L, 0L, 0L));
+		transaction.executeWithoutResult(status -> {
+			statsRepo.deleteByRestaurantId(restaurantId);
+			restaurantRepo.deleteById(restaurantId);
+		});
+	}
+
+	List<OrderStatsBucket> hours(Restaurant restaurant) {
+		em.flush();
+		em.clear();
+		return statsRepo.findHours(restaurant.getId(), HOUR.getEpochSecond(), HOUR.plus(Duration.ofDays(1)).getEpochSecond());
+	}
+
+	static Order order(Restaurant restaurant, Dish dish, Instant passedAt, int quantity) {
+		final var order = new Order(restaurant, "customer", new ArrayList<>(), passedAt, passedAt.plus(Duration.ofMinutes(10)));
+		order.getLines().add(new OrderLine(new OrderLine.OrderLineId(order, dish), quantity));
+		return order;
+	}
+}
@@ -0,0 +1,131 @@
+package de.egastro.training.oidc.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import com.c4_soft.springaddons.security.oidc.OpenidClaimSet;
+
+import de.egastro.training.oidc.domain.Dish;
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.DishRepository;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import de.egastro.training.oidc.dtos.restaurants.OrderCreationDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderCreationResultDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderLineUpdateDto;
+import de.egastro.training.oidc.security.EGastroAuthentication;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Calls the controller methods directly (without the web and method security layers), in the test transaction
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({
+		OrdersController.class,
+		OrdersFeed.class,
+		OrderStatistics.class,
+		IdempotencyKeys.class,
+		JacksonAutoConfiguration.class,
+		ValidationAutoConfiguration.class })
+class OrdersControllerTests {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	RestaurantRepository restaurantRepo;
+
+	@Autowired
+	DishRepository dishRepo;
+
+	@Autowired
+	OrdersController controller;
+
+	Restaurant restaurant;
+
+	Dish dish;
+
+	@BeforeEach
+	void setUp() {
+		restaurant = restaurantRepo.save(new Restaurant("Orders Controller", "orders-controller"));
+		dish = dishRepo.save(new Dish(restaurant, "orders-controller dish", 1000));
+	}
+
+	@Test
+	void givenNewOrder_whenCreating_thenASingleOrderIsInsertedWithItsId() {
+		final var response = controller
+				.createOrder(
+						"orders-controller",
+						restaurant,
+						null,
+						new OrderCreationDto("ch4mp", List.of(new OrderLineUpdateDto(dish.getId(), 2)), Instant.now().getEpochSecond()),
+						authentication("ch4mp"));
+		em.flush();
+
+		assertThat(response.getBody().id()).isNotNull();
+		assertThat(response.getBody().version()).isZero();
+		assertThat(response.getBody().lines()).hasSize(1);
+		assertThat(response.getHeaders().getLocation())
+				.hasToString("/realms/orders-controller/restaurants/%d/orders/%d".formatted(restaurant.getId(), response.getBody().id()));
+		assertThat(ordersCount()).isEqualTo(1L);
+	}
+
+	@Test
+	void givenValidAndInvalidOrders_whenCreatingInBulk_thenEachIndexHasItsResultAndInsertsAreBatched() {
+		final var askedFor = Instant.now().getEpochSecond();
+		final var valid = new OrderCreationDto("bulk", List.of(new OrderLineUpdateDto(dish.getId(), 1)), askedFor);
+		final var dtos = new ArrayList<OrderCreationDto>();
+		dtos.add(valid);
+		dtos.add(new OrderCreationDto("bulk", List.of(new OrderLineUpdateDto(-1L, 1)), askedFor));
+		dtos.add(valid);
+		dtos.add(null);
+		dtos.add(new OrderCreationDto("", List.of(), askedFor));
+		for (var i = 0; i < 5; ++i) {
+			dtos.add(valid);
+		}
+		em.flush();
+		final var statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		final var results = controller.createOrders("orders-controller", restaurant, dtos);
+		em.flush();
+		final var insertsCount = statistics.getEntityInsertCount();
+		final var statementsCount = statistics.getPrepareStatementCount();
+
+		assertThat(results).extracting(OrderCreationResultDto::index).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+		assertThat(results).extracting(OrderCreationResultDto::status).containsExactly(201, 404, 201, 400, 400, 201, 201, 201, 201, 201);
+		final var createdIds = results.stream().filter(r -> r.status() == 201).map(OrderCreationResultDto::orderId).toList();
+		assertThat(createdIds).doesNotContainNull().doesNotHaveDuplicates().hasSize(7);
+		assertThat(results).filteredOn(r -> r.status() != 201).extracting(OrderCreationResultDto::orderId).containsOnlyNulls();
+		assertThat(ordersCount()).isEqualTo(7L);
+		// 7 orders and 7 lines, in at most a batch per table
+		assertThat(insertsCount).isEqualTo(14L);
+		assertThat(statementsCount).isLessThan(insertsCount);
+	}
+
+	long ordersCount() {
+		return em
+				.createQuery("SELECT COUNT(o) FROM orders o WHERE o.restaurant.id = :restaurantId", Long.class)
+				.setParameter("restaurantId", restaurant.getId())
+				.getSingleResult();
+	}
+
+	static EGastroAuthentication authentication(String subject) {
+		final var claims = new HashMap<String, Object>();
+		claims.put("iss", "https://localhost:8443/realms/orders-controller");
+		claims.put("sub", subject);
+		return new EGastroAuthentication(new OpenidClaimSet(claims), List.of(), "token");
+	}
+}
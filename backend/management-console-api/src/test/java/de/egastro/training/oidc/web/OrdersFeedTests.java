@@ -0,0 +1,124 @@
+package de.egastro.training.oidc.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import de.egastro.training.oidc.dtos.restaurants.OrderEventDto;
+import de.egastro.training.oidc.dtos.restaurants.OrderEventDto.OrderEventType;
+
+class OrdersFeedTests {
+	final OrdersFeed feed = new OrdersFeed();
+
+	@Test
+	void givenSubscribersOfTwoRestaurants_whenAnOrderChanges_thenOnlyTheSubscribersOfItsRestaurantReceiveIt() throws InterruptedException {
+		final var kitchen = new RecordingEmitter();
+		final var counter = new RecordingEmitter();
+		final var otherRestaurant = new RecordingEmitter();
+		feed.subscribe(1L, kitchen);
+		feed.subscribe(1L, counter);
+		feed.subscribe(2L, otherRestaurant);
+
+		feed.onOrderEvent(event(1L, 10L));
+		feed.onOrderEvent(event(1L, 11L));
+
+		await(() -> kitchen.sent.size() == 2 && counter.sent.size() == 2);
+		assertThat(kitchen.sent).containsExactly("10", "11");
+		assertThat(counter.sent).containsExactly("10", "11");
+		assertThat(otherRestaurant.sent).isEmpty();
+	}
+
+	@Test
+	void givenSlowSubscriber_whenItsQueueIsFull_thenOnlyItIsDisconnected() throws InterruptedException {
+		final var slow = new RecordingEmitter();
+		slow.sending = new CountDownLatch(1);
+		final var fast = new RecordingEmitter();
+		feed.subscribe(1L, slow);
+		feed.subscribe(1L, fast);
+
+		// one event blocked in send, the queue full, and one more
+		for (var i = 0; i < OrdersFeed.SUBSCRIBER_QUEUE_CAPACITY + 2; ++i) {
+			feed.onOrderEvent(event(1L, (long) i));
+			final var publishedCount = i + 1;
+			// not to overflow the fast subscriber queue too
+			await(() -> fast.sent.size() == publishedCount);
+		}
+
+		assertThat(slow.isCompleted).isTrue();
+		slow.sending.countDown();
+		assertThat(feed.hasSubscribers(1L)).isTrue();
+		feed.onOrderEvent(event(1L, -1L));
+		await(() -> fast.sent.contains("-1"));
+		assertThat(slow.sent).doesNotContain("-1");
+	}
+
+	@Test
+	void givenSendFailsUnexpectedly_whenAnOrderChanges_thenTheSubscriberIsDisconnected() throws InterruptedException {
+		final var failing = new RecordingEmitter();
+		failing.failure = new IllegalArgumentException("not serializable");
+		feed.subscribe(1L, failing);
+
+		feed.onOrderEvent(event(1L, 10L));
+
+		await(() -> failing.error != null);
+		assertThat(failing.error).isSameAs(failing.failure);
+		assertThat(feed.hasSubscribers(1L)).isFalse();
+	}
+
+	static OrdersFeed.OrderEvent event(Long restaurantId, Long orderId) {
+		return new OrdersFeed.OrderEvent(restaurantId, new OrderEventDto(OrderEventType.CREATED, orderId, null));
+	}
+
+	static void await(BooleanSupplier condition) throws InterruptedException {
+		final var deadline = System.currentTimeMillis() + 5000L;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10L);
+		}
+		assertThat(condition.getAsBoolean()).isTrue();
+	}
+
+	/**
+	 * Records the IDs of the sent events instead of writing them to a response
+	 */
+	static class RecordingEmitter extends SseEmitter {
+		final List<String> sent = new CopyOnWriteArrayList<>();
+		volatile CountDownLatch sending = null;
+		volatile RuntimeException failure = null;
+		volatile boolean isCompleted = false;
+		volatile Throwable error = null;
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			if (failure != null) {
+				throw failure;
+			}
+			if (sending != null) {
+				try {
+					sending.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+			}
+			final var event = builder.build().iterator().next().getData().toString();
+			sent.add(event.lines().filter(line -> line.startsWith("id:")).findAny().map(line -> line.substring(3)).orElse(null));
+		}
+
+		@Override
+		public void complete() {
+			isCompleted = true;
+		}
+
+		@Override
+		public void completeWithError(Throwable ex) {
+			error = ex;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package de.egastro.training.oidc.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import de.egastro.training.oidc.domain.Dish;
+import de.egastro.training.oidc.domain.Order;
+import de.egastro.training.oidc.domain.OrderLine;
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.DishRepository;
+import de.egastro.training.oidc.domain.persistence.OrderRepository;
+import de.egastro.training.oidc.domain.persistence.OrderSpecifications;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import de.egastro.training.oidc.dtos.restaurants.OrderResponseDto;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Checks that building order DTOs issues a fixed number of SQL statements, whatever the number of orders and lines
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class OrdersQueryCountTests {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	RestaurantRepository restaurantRepo;
+
+	@Autowired
+	DishRepository dishRepo;
+
+	@Autowired
+	OrderRepository orderRepo;
+
+	Restaurant restaurant;
+
+	List<Dish> dishes;
+
+	@BeforeEach
+	void setUp() {
+		restaurant = restaurantRepo.save(new Restaurant("Query Count", "query-count"));
+		dishes = dishRepo.saveAll(IntStream.range(0, 4).mapToObj(i -> new Dish(restaurant, "query-count dish %d".formatted(i), 100 * i)).toList());
+	}
+
+	@Test
+	void givenMoreOrdersAndLines_whenListingOrders_thenStatementsCountDoesNotGrow() {
+		createOrders(2, 1);
+		final var smallCount = countStatementsToListOrders(2);
+
+		createOrders(30, dishes.size());
+		final var largeCount = countStatementsToListOrders(32);
+
+		assertThat(largeCount).isEqualTo(smallCount);
+		assertThat(largeCount).isLessThanOrEqualTo(3L);
+	}
+
+	long countStatementsToListOrders(int expectedOrdersCount) {
+		em.flush();
+		em.clear();
+		final var statistics = statistics();
+		statistics.clear();
+
+		final var orders = orderRepo.findBy(OrderSpecifications.ofRestaurant(restaurant.getId()), q -> q.sortBy(OrdersController.PAGE_SORT).limit(100).all());
+		final List<OrderResponseDto> dtos = OrdersController.toDtos(orders, orderRepo.findLineRowsByOrderIdIn(orders.stream().map(Order::getId).toList()));
+
+		assertThat(dtos).hasSize(expectedOrdersCount);
+		assertThat(dtos).allSatisfy(dto -> assertThat(dto.lines()).isNotEmpty());
+		return statistics.getPrepareStatementCount();
+	}
+
+	void createOrders(int ordersCount, int linesPerOrder) {
+		for (int i = 0; i < ordersCount; ++i) {
+			final var order = new Order(restaurant, "customer-%d".formatted(i), new ArrayList<>(), Instant.now(), Instant.now());
+			dishes.stream().limit(linesPerOrder).forEach(dish -> order.getLines().add(new OrderLine(new OrderLine.OrderLineId(order, dish), 1)));
+			orderRepo.save(order);
+		}
+	}
+
+	Statistics statistics() {
+		return em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+	}
+}
@@ -0,0 +1,79 @@
+package de.egastro.training.oidc.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import de.egastro.training.oidc.dtos.restaurants.RestaurantUpdateDto;
+import de.egastro.training.oidc.feign.KeycloakUserService;
+import de.egastro.training.oidc.jobs.RestaurantsPurger;
+import de.egastro.training.oidc.web.RestaurantsController.RestaurantWithSameNameAlreadyExistsException;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Calls the controller methods directly, with restaurants managed by the test transaction persistence context (as with open-in-view)
+ */
+@DataJpaTest
+@Import({ RestaurantsController.class, RestaurantsIndex.class })
+class RestaurantsControllerTests {
+
+	@MockBean
+	KeycloakUserService userService;
+
+	@MockBean
+	RestaurantsPurger restaurantsPurger;
+
+	@MockBean
+	MenuCache menuCache;
+
+	@MockBean
+	UserGrantsCache userGrantsCache;
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	RestaurantRepository restaurantRepo;
+
+	@Autowired
+	RestaurantsController controller;
+
+	@Test
+	void givenFreeName_whenRenamingRestaurant_thenItIsRenamed() {
+		final var restaurant = managed(restaurantRepo.save(new Restaurant("Sushi Bar", "renaming")));
+
+		controller.updateRestaurant("renaming", restaurant, new RestaurantUpdateDto("Burger House", "renaming"));
+		em.flush();
+		em.clear();
+
+		final var renamed = restaurantRepo.findById(restaurant.getId()).get();
+		assertThat(renamed.getName()).isEqualTo("Burger House");
+		assertThat(renamed.getNormalizedName()).isEqualTo("burger house");
+	}
+
+	@Test
+	void givenNameOfAnotherRestaurant_whenRenamingRestaurant_thenConflict() {
+		restaurantRepo.save(new Restaurant("Sushi Bar", "renaming"));
+		final var restaurant = managed(restaurantRepo.save(new Restaurant("Burger House", "renaming")));
+
+		assertThatThrownBy(() -> controller.updateRestaurant("renaming", restaurant, new RestaurantUpdateDto("SUSHI BAR", "renaming")))
+				.isInstanceOf(RestaurantWithSameNameAlreadyExistsException.class);
+		assertThat(restaurant.getName()).isEqualTo("Burger House");
+	}
+
+	/**
+	 * @return the restaurant freshly loaded in the persistence context, like the path variable converter does
+	 */
+	Restaurant managed(Restaurant restaurant) {
+		em.flush();
+		em.clear();
+		return restaurantRepo.findById(restaurant.getId()).get();
+	}
+}
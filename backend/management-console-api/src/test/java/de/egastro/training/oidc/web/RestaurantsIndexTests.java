@@ -0,0 +1,87 @@
+package de.egastro.training.oidc.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.egastro.training.oidc.domain.Restaurant;
+import de.egastro.training.oidc.domain.persistence.RestaurantNameRow;
+import de.egastro.training.oidc.domain.persistence.RestaurantRepository;
+import de.egastro.training.oidc.dtos.restaurants.RestaurantOverviewDto;
+
+class RestaurantsIndexTests {
+	final RestaurantRepository restaurantRepo = mock(RestaurantRepository.class);
+	final RestaurantsIndex index = new RestaurantsIndex(restaurantRepo);
+
+	@Test
+	void givenIndexedRestaurants_whenSearching_thenMatchesAreRankedExactPrefixWordPrefixThenSubstring() {
+		when(restaurantRepo.findAllNames())
+				.thenReturn(
+						List
+								.of(
+										new RestaurantNameRow(1L, "sushibach", "Chez Sushi"),
+										new RestaurantNameRow(2L, "sushibach", "Sushi Bar"),
+										new RestaurantNameRow(3L, "sushibach", "Sushi"),
+										new RestaurantNameRow(4L, "sushibach", "Kasushima"),
+										new RestaurantNameRow(5L, "burger-bistro", "Burger Bistro")));
+
+		assertThat(index.searchRestaurants("sushi", 10).stream().map(RestaurantOverviewDto::id)).containsExactly(3L, 2L, 1L, 4L);
+		assertThat(index.searchRestaurants("sus", 2).stream().map(RestaurantOverviewDto::id)).containsExactly(3L, 2L);
+		assertThat(index.searchRestaurants("sushis", 10)).isEmpty();
+		assertThat(index.searchRestaurants("", 10)).hasSize(5);
+		assertThat(index.searchAuthorizedParties("b", 10)).containsExactly("burger-bistro", "sushibach");
+	}
+
+	@Test
+	void givenNamesWithAccentsAndCase_whenSearching_thenTheyAreIgnored() {
+		when(restaurantRepo.findAllNames()).thenReturn(List.of(new RestaurantNameRow(1L, "bistrot", "Crêperie Éloïse")));
+
+		assertThat(index.searchRestaurants("CREPERIE eloise", 10).stream().map(RestaurantOverviewDto::id)).containsExactly(1L);
+		assertThat(index.searchRestaurants("é", 10).stream().map(RestaurantOverviewDto::id)).containsExactly(1L);
+	}
+
+	@Test
+	void givenLoadedIndex_whenRenamingAndRemovingRestaurants_thenPostingsAndPartiesAreUpdated() {
+		when(restaurantRepo.findAllNames())
+				.thenReturn(List.of(new RestaurantNameRow(1L, "sushibach", "Sushi Bar"), new RestaurantNameRow(2L, "burger-bistro", "Burger Bistro")));
+		assertThat(index.searchRestaurants("sushi", 10)).hasSize(1);
+
+		index.put(restaurant(1L, "burger-bistro", "Noodle Bar"));
+		assertThat(index.searchRestaurants("sushi", 10)).isEmpty();
+		assertThat(index.searchRestaurants("noodle", 10)).containsExactly(new RestaurantOverviewDto(1L, "burger-bistro", "Noodle Bar"));
+		assertThat(index.searchAuthorizedParties("sushi", 10)).isEmpty();
+
+		index.remove(2L);
+		assertThat(index.searchRestaurants("bistro", 10)).isEmpty();
+		assertThat(index.searchAuthorizedParties("burger", 10)).containsExactly("burger-bistro");
+
+		index.remove(1L);
+		assertThat(index.searchAuthorizedParties("", 10)).isEmpty();
+	}
+
+	@Test
+	void givenChangesCommittedWhileReloading_whenReloadCompletes_thenTheyAreReplayedOnTheReloadedEntries() {
+		when(restaurantRepo.findAllNames()).thenReturn(List.of(new RestaurantNameRow(1L, "sushibach", "Sushi Bar")));
+		assertThat(index.searchRestaurants("", 10)).hasSize(1);
+
+		// the database read misses a restaurant created, and still returns one deleted, while it runs
+		when(restaurantRepo.findAllNames()).thenAnswer(invocation -> {
+			index.put(restaurant(2L, "sushibach", "Sushi Express"));
+			index.remove(1L);
+			return List.of(new RestaurantNameRow(1L, "sushibach", "Sushi Bar"));
+		});
+		index.reload();
+
+		assertThat(index.searchRestaurants("sushi", 10)).containsExactly(new RestaurantOverviewDto(2L, "sushibach", "Sushi Express"));
+	}
+
+	static Restaurant restaurant(Long id, String authorizedParty, String name) {
+		final var restaurant = new Restaurant(name, authorizedParty);
+		restaurant.setId(id);
+		return restaurant;
+	}
+}
@@ -0,0 +1,116 @@
+package de.egastro.training.oidc.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import de.egastro.training.oidc.dtos.users.UserGrantsDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UserGrantsCacheTests {
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final AtomicInteger loadCount = new AtomicInteger();
+
+	@AfterEach
+	void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	void givenCachedGrants_whenGettingAgain_thenTheyAreNotReloaded() {
+		final var cache = new UserGrantsCache(meterRegistry, Duration.ofMinutes(5), 10);
+
+		assertThat(cache.get("ch4mp", this::load)).isEqualTo(grants(1));
+		assertThat(cache.get("ch4mp", this::load)).isEqualTo(grants(1));
+
+		assertThat(loadCount).hasValue(1);
+		assertThat(gets("hit")).isEqualTo(1.0);
+		assertThat(gets("miss")).isEqualTo(1.0);
+	}
+
+	@Test
+	void givenExpiredEntry_whenGetting_thenGrantsAreReloaded() {
+		final var cache = new UserGrantsCache(meterRegistry, Duration.ZERO, 10);
+
+		cache.get("ch4mp", this::load);
+
+		assertThat(cache.get("ch4mp", this::load)).isEqualTo(grants(2));
+	}
+
+	@Test
+	void givenInvalidationOutsideOfTransaction_whenGetting_thenGrantsAreReloaded() {
+		final var cache = new UserGrantsCache(meterRegistry, Duration.ofMinutes(5), 10);
+		cache.get("ch4mp", this::load);
+		cache.get("other", this::load);
+
+		cache.invalidate(List.of("ch4mp"));
+
+		assertThat(cache.get("ch4mp", this::load)).isEqualTo(grants(3));
+		assertThat(cache.get("other", this::load)).isEqualTo(grants(2));
+	}
+
+	@Test
+	void givenInvalidationInTransaction_whenGettingBeforeAndAfterCommit_thenGrantsAreReloadedAfterCommitOnly() {
+		final var cache = new UserGrantsCache(meterRegistry, Duration.ofMinutes(5), 10);
+		cache.get("ch4mp", this::load);
+
+		TransactionSynchronizationManager.initSynchronization();
+		cache.invalidate(List.of("ch4mp"));
+		assertThat(cache.get("ch4mp", this::load)).isEqualTo(grants(1));
+
+		TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+		assertThat(cache.get("ch4mp", this::load)).isEqualTo(grants(2));
+	}
+
+	@Test
+	void givenInvalidationDuringLoad_whenLoadCompletes_thenPossiblyStaleGrantsAreNotCached() {
+		final var cache = new UserGrantsCache(meterRegistry, Duration.ofMinutes(5), 10);
+
+		cache.get("ch4mp", () -> {
+			cache.invalidate(List.of("ch4mp"));
+			return load();
+		});
+
+		assertThat(cache.get("ch4mp", this::load)).isEqualTo(grants(2));
+	}
+
+	@Test
+	void givenMaxSizeReached_whenCachingAnotherUser_thenTheLeastRecentlyUsedIsEvicted() {
+		final var cache = new UserGrantsCache(meterRegistry, Duration.ofMinutes(5), 2);
+		cache.get("first", this::load);
+		cache.get("second", this::load);
+		cache.get("first", this::load);
+
+		cache.get("third", this::load);
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(meterRegistry.get("cache.evictions").counter().count()).isEqualTo(1.0);
+		assertThat(cache.get("first", this::load)).isEqualTo(grants(1));
+		assertThat(cache.get("second", this::load)).isEqualTo(grants(4));
+	}
+
+	UserGrantsDto load() {
+		return grants(loadCount.incrementAndGet());
+	}
+
+	double gets(String result) {
+		return meterRegistry.get("cache.gets").tag("result", result).counter().count();
+	}
+
+	/**
+	 * @param restaurantId distinct per load, to tell which load a cached response comes from
+	 */
+	static UserGrantsDto grants(long restaurantId) {
+		return new UserGrantsDto(Map.of(restaurantId, List.of("MANAGER")), Map.of(restaurantId, 1));
+	}
+}